@@ -0,0 +1,63 @@
+package com.billialpha.discord.gamebot.bench;
+
+import com.billialpha.discord.gamebot.BotHarness;
+import com.billialpha.discord.gamebot.GameBot;
+import com.billialpha.discord.gamebot.fake.FakeDiscord;
+import discord4j.common.util.Snowflake;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A bot logged in a fake Discord, for benchmarks of code needing a {@link GameBot}
+ *
+ * It runs a single shard, so every guild is local. Games created by benchmarks are journaled to a temporary
+ * directory, deleted at the end of the trial.
+ */
+@State(Scope.Benchmark)
+public class BotState {
+    private FakeDiscord discord;
+    private BotHarness harness;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        dir = Files.createTempDirectory("gamebot-jmh");
+        discord = new FakeDiscord();
+        harness = BotHarness.start(discord, 1, new int[] { 0 }, BotHarness.unlimited(), dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        harness.close();
+        discord.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // --- Getters ---
+
+    public GameBot getBot() {
+        return harness.getBot();
+    }
+
+    public FakeDiscord getDiscord() {
+        return discord;
+    }
+
+    /**
+     * @return A new snowflake, stamped now
+     */
+    public static Snowflake newId(long sequence) {
+        return Snowflake.of(((System.currentTimeMillis() - Snowflake.DISCORD_EPOCH) << 22) | (sequence & 0x3FFFFF));
+    }
+}
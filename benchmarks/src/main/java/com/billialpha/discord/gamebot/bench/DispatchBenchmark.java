@@ -0,0 +1,118 @@
+package com.billialpha.discord.gamebot.bench;
+
+import com.billialpha.discord.gamebot.GameBot;
+import com.billialpha.discord.gamebot.games.GameIndex;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.GameSpec;
+import discord4j.common.util.Snowflake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the games an event is dispatched to, as {@link GameBot} does for each message and reaction
+ *
+ * Each guild runs one quiz with a few players and a lobby message. Events target a different game each time,
+ * so lookups are not served from a single hot cache line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g") // A mailbox is allocated for each game
+public class DispatchBenchmark {
+    private static final int PLAYERS = 4;
+
+    @Param({ "10", "1000", "100000" })
+    public int instances;
+
+    private GameIndex index;
+    private GameBot bot;
+    private Snowflake[] guilds;
+    private Snowflake[] idleGuilds;
+    private Snowflake[] players;
+    private Snowflake[] channels;
+    private Snowflake[] messages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createGames(BotState state) {
+        bot = state.getBot();
+        GameSpec<?> spec = GameSpec.of("quizz");
+        guilds = new Snowflake[instances];
+        idleGuilds = new Snowflake[instances];
+        players = new Snowflake[instances];
+        channels = new Snowflake[instances];
+        messages = new Snowflake[instances];
+        long sequence = 0;
+        for (int i = 0; i < instances; i++) {
+            guilds[i] = BotState.newId(sequence++);
+            idleGuilds[i] = BotState.newId(sequence++);
+            channels[i] = BotState.newId(sequence++);
+            messages[i] = BotState.newId(sequence++);
+            GameInstance game = new GameInstance(bot, guilds[i], spec);
+            bot.getShards().getShard(guilds[i]).getIndex().add(game);
+            for (int p = 0; p < PLAYERS; p++) {
+                Snowflake player = BotState.newId(sequence++);
+                game.registerPlayer(player);
+                if (p == 0) players[i] = player;
+            }
+            game.registerMessage(channels[i], messages[i]);
+            game.setActive();
+        }
+        index = bot.getShards().getShard(guilds[0]).getIndex();
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == instances ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * A guild message, in a guild playing a game
+     */
+    @Benchmark
+    public Set<GameInstance> guildMessage() {
+        return index.getRunning(guilds[next()]);
+    }
+
+    /**
+     * A guild message in a guild without games, most of the traffic
+     */
+    @Benchmark
+    public Set<GameInstance> idleGuildMessage() {
+        return index.getRunning(idleGuilds[next()]);
+    }
+
+    /**
+     * A direct message, routed by player over every local shard
+     */
+    @Benchmark
+    public Collection<GameInstance> directMessage() {
+        return bot.getShards().getByPlayer(players[next()]);
+    }
+
+    /**
+     * A reaction, routed by message
+     */
+    @Benchmark
+    public GameInstance reaction() {
+        int i = next();
+        return index.getByMessage(channels[i], messages[i]);
+    }
+}
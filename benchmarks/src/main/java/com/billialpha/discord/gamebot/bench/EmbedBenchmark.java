@@ -0,0 +1,63 @@
+package com.billialpha.discord.gamebot.bench;
+
+import com.billialpha.discord.gamebot.games.quizz.QuizzRound;
+import discord4j.core.spec.EmbedCreateSpec;
+import discord4j.discordjson.json.EmbedData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the embed of a round, as each coalesced edit does
+ *
+ * Rounds only describe the answers that fit in the embed field, the larger lists show the cost of building the
+ * field when given more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbedBenchmark {
+    @Param({ "10", "30", "1000" })
+    public int answers;
+
+    private List<String> lines;
+    private int total;
+
+    @Setup(Level.Trial)
+    public void createAnswers() {
+        lines = new ArrayList<>(answers);
+        for (int i = 0; i < answers; i++)
+            lines.add("Joueur "+i+" ("+String.format("%.2f", i * 0.37)+"s): `La tour Eiffel` "+(i % 3 == 0 ? "❌" : "✅"));
+        total = answers * 4; // Most answers not described
+    }
+
+    @Benchmark
+    public EmbedData running() {
+        EmbedCreateSpec spec = new EmbedCreateSpec();
+        QuizzRound.createEmbed(spec, "Quel monument mesure 330 mètres ?", "Indice : à Paris", lines, total, true);
+        return spec.asRequest();
+    }
+
+    @Benchmark
+    public EmbedData finished() {
+        EmbedCreateSpec spec = new EmbedCreateSpec();
+        QuizzRound.createEmbed(spec, "Quel monument mesure 330 mètres ?", "Indice : à Paris", lines, total, false);
+        return spec.asRequest();
+    }
+}
@@ -0,0 +1,177 @@
+package com.billialpha.discord.gamebot.bench;
+
+import com.billialpha.discord.gamebot.BotHarness;
+import com.billialpha.discord.gamebot.fake.FakeDiscord;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeGuild;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeUser;
+import com.billialpha.discord.gamebot.metrics.BotMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compares the heap retained by the entity store of the default gateway and by the slim store of
+ * {@link com.billialpha.discord.gamebot.gateway.GatewayConfig}
+ *
+ * Arguments are {@code name=value} pairs, see {@link #DEFAULTS}. Each store runs in its own JVM: guilds and their
+ * members are created in a fake Discord, the bot logs in, then every member chats in its guild without playing.
+ * The retained heap is the heap used after GC once all messages are handled, minus the heap used after GC before
+ * login. Messages kept by the fake Discord are dropped before measuring. The report is written as JSON.
+ *
+ * Both stores share the fixed cost of the client and of the bot, so compare saved bytes rather than the ratio.
+ * The default store only keeps weak references to messages, they are collected before measuring: the difference
+ * comes from the members received with the guilds, which the slim store drops unless they play.
+ */
+public class HeapFootprint {
+    private static final Map<String, String> DEFAULTS = Map.of(
+            "guilds", "100",        // Guilds the bot is in
+            "members", "50",        // Members of each guild, besides its owner
+            "messages", "4",        // Messages sent by each member
+            "store", "",            // Store measured in this JVM: "full" or "slim", both in child JVMs if empty
+            "out", "");             // File to write the report to, standard output if empty
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+
+    public static void main(String[] argv) throws Exception {
+        Map<String, String> args = new HashMap<>(DEFAULTS);
+        for (String arg : argv) {
+            int sep = arg.indexOf('=');
+            if (sep < 0 || !DEFAULTS.containsKey(arg.substring(0, sep)))
+                throw new IllegalArgumentException("Unknown argument: "+arg+", expected one of "+DEFAULTS.keySet());
+            args.put(arg.substring(0, sep), arg.substring(sep + 1));
+        }
+
+        ObjectMapper json = new ObjectMapper();
+        ObjectNode report;
+        if (args.get("store").isEmpty()) {
+            report = json.createObjectNode();
+            JsonNode full = fork(args, "full");
+            JsonNode slim = fork(args, "slim");
+            report.set("full", full);
+            report.set("slim", slim);
+            long fullBytes = full.get("retainedBytes").asLong();
+            long slimBytes = slim.get("retainedBytes").asLong();
+            report.put("savedBytes", fullBytes - slimBytes);
+            report.put("slimToFullRatio", fullBytes > 0 ? (double) slimBytes / fullBytes : 0);
+            ObjectNode settings = json.valueToTree(args);
+            settings.remove("store");
+            report.set("settings", settings);
+        } else {
+            report = measure(args);
+        }
+
+        String out = json.writerWithDefaultPrettyPrinter().writeValueAsString(report);
+        if (args.get("out").isEmpty()) System.out.println(out);
+        else Files.writeString(Paths.get(args.get("out")), out);
+        System.exit(0); // Reactor threads are not daemons
+    }
+
+    /**
+     * Measures a store in a new JVM, with the same settings and heap options
+     */
+    private static JsonNode fork(Map<String, String> args, String store) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(HeapFootprint.class.getName());
+        for (String name : new String[] { "guilds", "members", "messages" }) command.add(name+"="+args.get(name));
+        command.add("store="+store);
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) throw new IllegalStateException("Measure of the "+store+" store failed");
+        return new ObjectMapper().readTree(output);
+    }
+
+    private static ObjectNode measure(Map<String, String> args) throws Exception {
+        String store = args.get("store");
+        if (!store.equals("full") && !store.equals("slim"))
+            throw new IllegalArgumentException("Unknown store: "+store+", expected full or slim");
+        int guildCount = Integer.parseInt(args.get("guilds"));
+        int memberCount = Integer.parseInt(args.get("members"));
+        int messageCount = Integer.parseInt(args.get("messages"));
+
+        ObjectNode report = new ObjectMapper().createObjectNode();
+        Path dir = Files.createTempDirectory("gamebot-heap");
+        try (FakeDiscord discord = new FakeDiscord()) {
+            List<FakeGuild> guilds = new ArrayList<>(guildCount);
+            List<List<FakeUser>> members = new ArrayList<>(guildCount);
+            for (int g = 0; g < guildCount; g++) {
+                FakeGuild guild = discord.addGuild("Guild "+g, discord.addUser("Admin "+g), 0, 1);
+                List<FakeUser> guildMembers = new ArrayList<>(memberCount);
+                for (int m = 0; m < memberCount; m++) {
+                    FakeUser member = discord.addUser("Membre "+g+"-"+m);
+                    guild.addMember(member);
+                    guildMembers.add(member);
+                }
+                guilds.add(guild);
+                members.add(guildMembers);
+            }
+            long before = usedHeapAfterGc();
+
+            try (BotHarness harness = BotHarness.start(discord, 1, new int[] { 0 }, BotHarness.unlimited(), dir,
+                    store.equals("slim"))) {
+                BotMetrics metrics = harness.getBot().getMetrics();
+                long sent = 0;
+                for (int i = 0; i < messageCount; i++) {
+                    for (int g = 0; g < guildCount; g++) {
+                        for (FakeUser member : members.get(g)) {
+                            discord.sendMessage(guilds.get(g).getMainChannel(), member, "Message "+i+" de "+member.name);
+                            sent++;
+                        }
+                    }
+                }
+                long deadline = System.nanoTime() + TIMEOUT.toNanos();
+                while (metrics.messagesReceived.get() < sent) {
+                    if (System.nanoTime() > deadline) throw new IllegalStateException("Timed out waiting for messages");
+                    Thread.sleep(10);
+                }
+                discord.clearMessages();
+                long after = usedHeapAfterGc();
+
+                report.put("store", store);
+                report.put("heapBeforeLoginBytes", before);
+                report.put("heapAfterBytes", after);
+                report.put("retainedBytes", after - before);
+                report.put("retainedPerGuildBytes", (after - before) / Math.max(guildCount, 1));
+                report.put("messagesSent", sent);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * @return The heap used once unreachable objects are collected, as far as repeated GCs get
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            long now = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,240 @@
+package com.billialpha.discord.gamebot.bench;
+
+import com.billialpha.discord.gamebot.BotHarness;
+import com.billialpha.discord.gamebot.fake.FakeDiscord;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeChannel;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeGuild;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeUser;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.quizz.QuizzGame;
+import com.billialpha.discord.gamebot.metrics.BotMetrics;
+import com.billialpha.discord.gamebot.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Plays quizzes in many guilds at once against a fake Discord, and reports how fast the bot handles them
+ *
+ * Arguments are {@code name=value} pairs, see {@link #DEFAULTS}. Each round, every host asks a question by direct
+ * message, then all players answer at once, several times each, from a pool of threads. The report is written as
+ * JSON: events handled per second during the answer bursts, p50/p99 latencies of the event handlers and REST calls
+ * per round.
+ */
+public class LoadGenerator {
+    private static final Map<String, String> DEFAULTS = Map.of(
+            "guilds", "20",         // Guilds, each playing one quiz
+            "players", "50",        // Players of each quiz, besides its host
+            "rounds", "5",          // Rounds played by each quiz
+            "repeats", "2",         // Answers sent by each player per round, only the first one counts
+            "threads", "8",         // Threads sending answers
+            "restLatencyMs", "0",   // Time taken by the fake Discord to answer each REST call
+            "out", "");             // File to write the report to, standard output if empty
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private final int guildCount;
+    private final int playerCount;
+    private final int roundCount;
+    private final int repeats;
+    private final int threads;
+    private final FakeDiscord discord;
+    private final List<Quiz> quizzes;
+
+    private LoadGenerator(Map<String, String> args, FakeDiscord discord) {
+        this.guildCount = Integer.parseInt(args.get("guilds"));
+        this.playerCount = Integer.parseInt(args.get("players"));
+        this.roundCount = Integer.parseInt(args.get("rounds"));
+        this.repeats = Integer.parseInt(args.get("repeats"));
+        this.threads = Integer.parseInt(args.get("threads"));
+        this.discord = discord;
+        this.quizzes = new ArrayList<>();
+        for (int i = 0; i < guildCount; i++) quizzes.add(new Quiz(discord, i, playerCount));
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Map<String, String> args = new HashMap<>(DEFAULTS);
+        for (String arg : argv) {
+            int sep = arg.indexOf('=');
+            if (sep < 0 || !DEFAULTS.containsKey(arg.substring(0, sep)))
+                throw new IllegalArgumentException("Unknown argument: "+arg+", expected one of "+DEFAULTS.keySet());
+            args.put(arg.substring(0, sep), arg.substring(sep + 1));
+        }
+
+        ObjectNode report;
+        Path dir = Files.createTempDirectory("gamebot-bench");
+        try (FakeDiscord discord = new FakeDiscord(Duration.ofMillis(Long.parseLong(args.get("restLatencyMs"))))) {
+            LoadGenerator generator = new LoadGenerator(args, discord);
+            try (BotHarness harness = BotHarness.start(discord, 1, new int[] { 0 }, BotHarness.unlimited(), dir)) {
+                report = generator.run(harness);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        report.set("settings", new ObjectMapper().valueToTree(args));
+
+        String json = new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(report);
+        if (args.get("out").isEmpty()) System.out.println(json);
+        else Files.writeString(Paths.get(args.get("out")), json);
+        System.exit(0); // Reactor threads are not daemons
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Timed out waiting for "+what);
+            Thread.sleep(1);
+        }
+    }
+
+    // --- Actions ---
+
+    private ObjectNode run(BotHarness harness) throws Exception {
+        BotMetrics metrics = harness.getBot().getMetrics();
+        for (Quiz quiz : quizzes) quiz.start(harness);
+
+        discord.getRest().reset();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long answersSent = 0;
+        long burstNanos = 0;
+        try {
+            for (int round = 0; round < roundCount; round++) {
+                for (Quiz quiz : quizzes) discord.sendDirectMessage(quiz.host, "Question "+round+" ?\n=42");
+                long started = (long) guildCount * (round + 1);
+                await("rounds to start", () -> metrics.roundsStarted.get() >= started);
+
+                long handled = metrics.messageLatency.getCount();
+                long sent = (long) guildCount * playerCount * repeats;
+                long start = System.nanoTime();
+                burst(executor);
+                await("answers to be handled", () -> metrics.messageLatency.getCount() - handled >= sent);
+                burstNanos += System.nanoTime() - start;
+                answersSent += sent;
+                await("rounds to finish", () -> metrics.roundsFinished.get() >= started);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ObjectNode report = new ObjectMapper().createObjectNode();
+        report.put("eventsPerSecond", answersSent * 1e9 / burstNanos);
+        report.put("answersSent", answersSent);
+        report.put("answersAccepted", metrics.answers.get());
+        latency(report.putObject("messageLatencyMs"), metrics.messageLatency);
+        latency(report.putObject("reactionLatencyMs"), metrics.reactionLatency);
+        latency(report.putObject("onGuildMessageLatencyMs"), metrics.onGuildMessageLatency);
+        latency(report.putObject("onDirectMessageLatencyMs"), metrics.onDirectMessageLatency);
+        long rounds = metrics.roundsFinished.get();
+        report.put("rounds", rounds);
+        report.put("restCallsPerRound", (double) discord.getRest().getTotal() / rounds);
+        report.put("roundRestCallsPerRound", (double) metrics.roundRestCalls.getSum() /
+                metrics.roundRestCalls.getCount());
+        ObjectNode routes = report.putObject("restCalls");
+        discord.getRest().getCounts().forEach(routes::put);
+        return report;
+    }
+
+    /**
+     * Sends the answers of every player, split between the threads, half of the players answering right
+     */
+    private void burst(ExecutorService executor) throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        String mention = discord.getSelf().mention();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    go.await();
+                    for (int r = 0; r < repeats; r++) {
+                        for (int i = thread; i < guildCount * playerCount; i += threads) {
+                            Quiz quiz = quizzes.get(i % guildCount);
+                            int player = i / guildCount;
+                            String answer = player % 2 == 0 ? "42" : "24";
+                            discord.sendMessage(quiz.main, quiz.players.get(player), mention+" "+answer);
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        go.countDown();
+        if (!done.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+            throw new IllegalStateException("Timed out sending answers");
+    }
+
+    /**
+     * Writes the p50 and p99 of a latency, as the upper bound of their buckets, null if above every bound
+     */
+    private static void latency(ObjectNode node, MetricRegistry.Distribution latency) {
+        node.put("count", latency.getCount());
+        long p50 = latency.quantile(0.5);
+        long p99 = latency.quantile(0.99);
+        if (p50 == Long.MAX_VALUE) node.putNull("p50");
+        else node.put("p50", p50 / 1e6);
+        if (p99 == Long.MAX_VALUE) node.putNull("p99");
+        else node.put("p99", p99 / 1e6);
+    }
+
+    // --- Subclasses ---
+
+    /**
+     * A guild playing a quiz, with its host, its players and an answer channel
+     */
+    private static class Quiz {
+        final FakeDiscord discord;
+        final FakeUser host;
+        final FakeGuild guild;
+        final FakeChannel main;
+        final List<FakeUser> players;
+
+        Quiz(FakeDiscord discord, int index, int playerCount) {
+            this.discord = discord;
+            this.host = discord.addUser("Hôte "+index);
+            this.guild = discord.addGuild("Guild "+index, host, 0, 1);
+            this.main = guild.getMainChannel();
+            this.players = new ArrayList<>(playerCount);
+            guild.addTextChannel("equipe-1", guild.addCategory(QuizzGame.DEFAULT_CATEGORY));
+            for (int i = 0; i < playerCount; i++) {
+                FakeUser player = discord.addUser("Joueur "+index+"-"+i);
+                guild.addMember(player);
+                players.add(player);
+            }
+        }
+
+        /**
+         * Opens the lobby, lets every player join and starts the game
+         */
+        void start(BotHarness harness) throws InterruptedException {
+            discord.sendMessage(main, host, "%start quizz");
+            ObjectNode lobby = discord.awaitMessage(m -> m.get("channel_id").asLong() == main.id
+                    && m.get("content").asText().startsWith("**On démarre"), TIMEOUT);
+            if (lobby == null) throw new IllegalStateException("No lobby in guild "+guild.name);
+            long lobbyId = lobby.get("id").asLong();
+            GameInstance game = harness.awaitGame(main.id, lobbyId);
+            for (FakeUser player : players) discord.react(main.id, lobbyId, player, "✅");
+            await("players to join", () -> game.getPlayers().size() == players.size() + 1);
+            discord.react(main.id, lobbyId, host, "✅");
+            await("game to start", () -> game.getState() == GameInstance.State.ACTIVE);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.billialpha.discord.gamebot.bench;
+
+import com.billialpha.discord.gamebot.MessageParser;
+import discord4j.common.util.Snowflake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the answer from a guild message, as the quiz does for every message of a guild playing it
+ *
+ * Compares the parser with the regular expressions it replaced, built for each message, and with the same
+ * expression compiled once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MentionBenchmark {
+    private static final Snowflake SELF = Snowflake.of(818507417045155860L);
+
+    /**
+     * answer: an answer mentioning the bot, nickname: the same with a nickname mention,
+     * chatter: a message without mention, other: an answer mentioning another user
+     */
+    @Param({ "answer", "nickname", "chatter", "other" })
+    public String message;
+
+    private MessageParser parser;
+    private Pattern mention;
+    private String msg;
+
+    @Setup(Level.Trial)
+    public void createMessage() {
+        parser = new MessageParser(SELF);
+        mention = Pattern.compile("^<@!?"+SELF.asLong()+">(.*)", Pattern.DOTALL);
+        switch (message) {
+            case "answer": msg = "<@"+SELF.asString()+"> La tour Eiffel"; break;
+            case "nickname": msg = "<@!"+SELF.asString()+">   La tour Eiffel  "; break;
+            case "chatter": msg = "Quelqu'un sait quand commence le prochain quizz ?"; break;
+            case "other": msg = "<@149882468571283457> La tour Eiffel"; break;
+            default: throw new IllegalArgumentException("Unknown message: "+message);
+        }
+    }
+
+    @Benchmark
+    public String parser() {
+        return parser.stripSelfMention(msg);
+    }
+
+    /**
+     * The former matching, in QuizzGame.onGuildMessage
+     */
+    @Benchmark
+    public String regex() {
+        String selfMentionRegex = "^<@!?"+SELF.asLong()+">";
+        if (!msg.matches(selfMentionRegex+".*")) return null;
+        return msg.replaceFirst(selfMentionRegex, "").trim();
+    }
+
+    @Benchmark
+    public String compiledRegex() {
+        Matcher matcher = mention.matcher(msg);
+        return matcher.matches() ? matcher.group(1).trim() : null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import com.billialpha.discord.gamebot.GameBot;
+import com.billialpha.discord.gamebot.bench.BotState;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.GameSpec;
+import discord4j.common.util.Snowflake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the players of a large lobby: counted without the host for each answer, checked for each reaction
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuizzLobbyBenchmark {
+    @Param({ "10", "1000", "100000" })
+    public int players;
+
+    private QuizzGame quizz;
+    private GameInstance game;
+    private long[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createLobby(BotState state) throws IOException {
+        GameBot bot = state.getBot();
+        game = new GameInstance(bot, BotState.newId(0), GameSpec.of("quizz"));
+        quizz = new QuizzGame(game);
+        ids = new long[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = BotState.newId(i + 1).asLong();
+            game.registerPlayer(Snowflake.of(ids[i]));
+        }
+        // The host is a player, as when starting the game
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(ids[0]);
+            out.writeLong(1);
+            out.writeLong(2);
+        }
+        quizz.replay(QuizzGame.RECORD_HOST, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Benchmark
+    public int actualPlayerCount() {
+        return quizz.getActualPlayerCount();
+    }
+
+    @Benchmark
+    public boolean containsPlayer() {
+        int i = next;
+        next = i + 1 == players ? 0 : i + 1;
+        return game.getPlayers().contains(ids[i]);
+    }
+}
@@ -0,0 +1,127 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import com.billialpha.discord.gamebot.GameBot;
+import com.billialpha.discord.gamebot.bench.BotState;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.GameSpec;
+import discord4j.common.util.Snowflake;
+import discord4j.core.object.entity.User;
+import discord4j.discordjson.json.UserData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a burst of answers to a running round from several threads, as gateway threads do when every player
+ * answers at once
+ *
+ * Each measured batch is one burst: every thread sends {@link #BURST} answers of distinct players to a fresh round,
+ * or the answers of players who already answered. Rounds are rebuilt through the journal replay, so they run
+ * without a Discord message and answers don't trigger embed edits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = QuizzRoundBenchmark.BURST)
+@Measurement(iterations = 20, batchSize = QuizzRoundBenchmark.BURST)
+@Threads(QuizzRoundBenchmark.THREADS)
+@Fork(1)
+public class QuizzRoundBenchmark {
+    static final int BURST = 5000;
+    static final int THREADS = 4;
+
+    private QuizzGame quizz;
+    private User[] players;
+    private Snowflake messageId;
+    private QuizzRound round;
+    private int rounds;
+
+    @Setup(Level.Trial)
+    public void createGame(BotState state) {
+        GameBot bot = state.getBot();
+        GameInstance game = new GameInstance(bot, BotState.newId(0), GameSpec.of("quizz"));
+        quizz = new QuizzGame(game);
+        players = new User[THREADS * BURST];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new User(bot.client, UserData.builder()
+                    .id(BotState.newId(i + 1).asString())
+                    .username("Joueur "+i)
+                    .discriminator("0001")
+                    .build());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startRound(BenchmarkParams params) throws IOException {
+        round = replayRound(quizz, rounds++, Snowflake.of(1), List.of("La tour Eiffel"));
+        messageId = BotState.newId(0);
+        if (params.getBenchmark().endsWith("repeatedAnswers")) {
+            for (User player : players) round.onAnswer(player, "La tour Eiffel", messageId, System.nanoTime()).block();
+        }
+    }
+
+    /**
+     * Builds a running round from its start record, as done when recovering games
+     */
+    static QuizzRound replayRound(QuizzGame quizz, int index, Snowflake channelId, List<String> expected)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(index);
+            out.writeLong(channelId.asLong());
+            out.writeUTF("Quel monument mesure 330 mètres ?");
+            out.writeBoolean(false);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(Duration.ofHours(1).toMillis());
+            out.writeInt(expected.size());
+            for (String exp : expected) out.writeUTF(exp);
+        }
+        return QuizzRound.replay(quizz, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @State(Scope.Thread)
+    public static class Sender {
+        private int first;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void reset(ThreadParams params) {
+            first = params.getThreadIndex() * BURST;
+            next = 0;
+        }
+
+        User nextPlayer(User[] players) {
+            return players[first + next++ % BURST];
+        }
+    }
+
+    @Benchmark
+    public String firstAnswers(Sender sender) {
+        return round.onAnswer(sender.nextPlayer(players), "la tour eifel", messageId, System.nanoTime()).block();
+    }
+
+    @Benchmark
+    public String repeatedAnswers(Sender sender) {
+        return round.onAnswer(sender.nextPlayer(players), "la tour eifel", messageId, System.nanoTime()).block();
+    }
+}
@@ -0,0 +1,132 @@
+package com.billialpha.discord.gamebot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission of incoming events in front of game dispatch
+ *
+ * Each guild and each user has a token bucket, an event is admitted if both have a token, so a flood
+ * in one guild is shed before it reaches the shared event threads. Events essential to a running game
+ * only take a token from their user, a busy guild never loses answers or joins to its own chatter.
+ * Buckets are refilled lazily on acquire with a single compare-and-set, without locks.
+ *
+ * The bot enters overload mode when too many admitted events are in flight, and leaves it once half
+ * of them completed. While overloaded, games only receive the events they deem essential.
+ */
+public class AdmissionControl {
+    private final Limiter guilds;
+    private final Limiter users;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight;
+    private volatile boolean overloaded;
+
+    /**
+     * @param guildRate The sustained events per second of a guild
+     * @param userRate The sustained events per second of a user
+     * @param maxInFlight The events in flight entering overload mode
+     */
+    public AdmissionControl(double guildRate, int guildBurst, double userRate, int userBurst, int maxInFlight) {
+        this.guilds = new Limiter(guildRate, guildBurst);
+        this.users = new Limiter(userRate, userBurst);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new AtomicInteger();
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return Whether only essential events are dispatched to games
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    // --- Actions ---
+
+    /**
+     * Takes a token from the buckets of a user and of its guild
+     * @param guildId The guild of the event, 0 for direct messages
+     * @param essential Whether a game needs the event, it then bypasses the guild bucket
+     */
+    public Verdict admit(long guildId, long userId, boolean essential) {
+        long now = System.nanoTime();
+        if (!users.tryAcquire(userId, now)) return Verdict.USER_LIMITED;
+        if (guildId != 0 && !essential && !guilds.tryAcquire(guildId, now)) return Verdict.GUILD_LIMITED;
+        return Verdict.ADMITTED;
+    }
+
+    /**
+     * Called when the handling of an event starts
+     * @return Whether the bot just entered overload mode
+     */
+    public boolean onStart() {
+        if (inFlight.incrementAndGet() <= maxInFlight || overloaded) return false;
+        overloaded = true;
+        return true;
+    }
+
+    /**
+     * Called when the handling of an event completes
+     * @return Whether the bot just left overload mode
+     */
+    public boolean onEnd() {
+        if (inFlight.decrementAndGet() > maxInFlight / 2 || !overloaded) return false;
+        overloaded = false;
+        return true;
+    }
+
+    /**
+     * Forgets the buckets that refilled completely, they are recreated full on the next event
+     */
+    public void sweep() {
+        long now = System.nanoTime();
+        guilds.sweep(now);
+        users.sweep(now);
+    }
+
+    // --- Subclasses ---
+
+    public enum Verdict {
+        ADMITTED,
+        GUILD_LIMITED,
+        USER_LIMITED;
+    }
+
+    /**
+     * Token buckets by id, as a generic cell rate algorithm: each bucket only stores the time at which it
+     * would be full again, taking a token pushes it forward by the refill interval.
+     */
+    private static class Limiter {
+        private final Map<Long, AtomicLong> buckets; // Time at which the bucket is full, by System.nanoTime()
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        Limiter(double rate, int burst) {
+            if (rate <= 0 || burst < 1) throw new IllegalArgumentException("Invalid rate: "+rate+"/s, burst "+burst);
+            this.buckets = new ConcurrentHashMap<>();
+            this.intervalNanos = (long) (1e9 / rate);
+            this.burstNanos = intervalNanos * burst;
+        }
+
+        boolean tryAcquire(long id, long now) {
+            AtomicLong bucket = buckets.computeIfAbsent(id, k -> new AtomicLong(now));
+            while (true) {
+                long fullAt = bucket.get();
+                long next = Math.max(fullAt, now) + intervalNanos;
+                if (next - now > burstNanos) return false; // Out of tokens
+                if (bucket.compareAndSet(fullAt, next)) return true;
+            }
+        }
+
+        void sweep(long now) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+}
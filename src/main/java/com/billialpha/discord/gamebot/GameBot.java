@@ -1,60 +1,310 @@
 package com.billialpha.discord.gamebot;
 
+import com.billialpha.discord.gamebot.commands.CommandRouter;
+import com.billialpha.discord.gamebot.commands.PermissionCache;
 import com.billialpha.discord.gamebot.games.GameInstance;
 import com.billialpha.discord.gamebot.games.GameRegistry;
 import com.billialpha.discord.gamebot.games.GameSpec;
+import com.billialpha.discord.gamebot.games.MemberCache;
 import com.billialpha.discord.gamebot.games.quizz.QuizzGame;
+import com.billialpha.discord.gamebot.gateway.GatewayConfig;
+import com.billialpha.discord.gamebot.journal.Journal;
+import com.billialpha.discord.gamebot.metrics.BotMetrics;
+import com.billialpha.discord.gamebot.metrics.MetricRegistry;
+import com.billialpha.discord.gamebot.metrics.MetricsServer;
+import com.billialpha.discord.gamebot.scores.Leaderboard;
+import discord4j.common.ReactorResources;
 import discord4j.common.util.Snowflake;
 import discord4j.core.DiscordClient;
 import discord4j.core.DiscordClientBuilder;
 import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.channel.CategoryCreateEvent;
+import discord4j.core.event.domain.channel.CategoryDeleteEvent;
+import discord4j.core.event.domain.channel.CategoryUpdateEvent;
+import discord4j.core.event.domain.channel.NewsChannelCreateEvent;
+import discord4j.core.event.domain.channel.NewsChannelDeleteEvent;
+import discord4j.core.event.domain.channel.NewsChannelUpdateEvent;
+import discord4j.core.event.domain.channel.TextChannelCreateEvent;
+import discord4j.core.event.domain.channel.TextChannelDeleteEvent;
+import discord4j.core.event.domain.channel.TextChannelUpdateEvent;
+import discord4j.core.event.domain.guild.GuildUpdateEvent;
+import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.event.domain.message.ReactionAddEvent;
+import discord4j.core.event.domain.role.RoleDeleteEvent;
+import discord4j.core.event.domain.role.RoleUpdateEvent;
+import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.GuildMessageChannel;
 import discord4j.core.object.presence.Presence;
 import discord4j.core.object.reaction.ReactionEmoji;
-import discord4j.rest.util.Permission;
+import discord4j.core.shard.ShardingStrategy;
+import discord4j.gateway.intent.Intent;
+import discord4j.gateway.intent.IntentSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.function.TupleUtils;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 /**
  * Main class
  */
 public class GameBot {
-    private static GameBot instance;
     public static final String VERSION = "0.1.1";
     public static final Logger LOG = LoggerFactory.getLogger(GameBot.class);
 
-    public static GameBot get() {
-        return instance;
-    }
-
     public final GatewayDiscordClient client;
-    private Set<GameInstance> games;
+    private final ShardRouter shards;
+    private final MessageParser parser;
+    private final CommandRouter router;
+    private final PermissionCache permissions;
+    private final MemberCache memberCache;
+    private final TimerWheel timers;
+    private final Journal journal;
+    private final Leaderboard leaderboard;
+    private final AtomicLong gameIds;
+    private final Duration lobbyTtl;
+    private final Duration idleTtl;
+    private final BotMetrics metrics;
+    private final MessageScheduler messageScheduler;
+    private final AdmissionControl admission;
+    private volatile boolean timingDiagnostics;
 
-    private GameBot(GatewayDiscordClient client) {
-        instance = this;
+    GameBot(GatewayDiscordClient client, ShardRouter shards, BotMetrics metrics,
+                    MessageScheduler messageScheduler, AdmissionControl admission, Journal journal, Leaderboard leaderboard,
+                    Duration lobbyTtl, Duration idleTtl) {
         this.client = client;
-        this.games = new HashSet<>();
+        this.shards = shards;
+        this.parser = new MessageParser(client.getSelfId());
+        this.router = new CommandRouter('%', GameRegistry.get());
+        this.permissions = new PermissionCache(1000, Duration.ofMinutes(10));
+        this.memberCache = new MemberCache(1000, Duration.ofHours(6));
+        this.timers = new TimerWheel("game-timers", Duration.ofMillis(100), 1024);
+        this.journal = journal;
+        this.leaderboard = leaderboard;
+        this.gameIds = new AtomicLong();
+        this.lobbyTtl = lobbyTtl;
+        this.idleTtl = idleTtl;
+        this.metrics = metrics;
+        this.messageScheduler = messageScheduler;
+        this.admission = admission;
+        registerGauges(metrics.getRegistry());
+    }
+
+    /**
+     * Exposes the state of games and of shared components, read when metrics are scraped
+     */
+    private void registerGauges(MetricRegistry registry) {
+        for (GameInstance.State state : GameInstance.State.values()) {
+            if (state == GameInstance.State.INACTIVE) continue; // Inactive games are reclaimed
+            registry.gauge("gamebot_games", "Games by state", () -> shards.getInstances().stream()
+                    .filter(g -> g.getState() == state).count(), "state", state.name().toLowerCase());
+        }
+        registry.counter("gamebot_games_created_total", "Games created", () -> shards.getLocalShards().stream()
+                .mapToLong(s -> s.getIndex().getCreatedCount()).sum());
+        registry.counter("gamebot_games_reclaimed_total", "Games removed from the index",
+                () -> shards.getLocalShards().stream().mapToLong(s -> s.getIndex().getReclaimedCount()).sum());
+        registry.gauge("gamebot_mailbox_depth", "Events waiting in game mailboxes",
+                () -> shards.getInstances().stream().mapToLong(g -> g.getMailbox().getDepth()).sum());
+        registry.counter("gamebot_mailbox_rejected_total", "Events dropped by full game mailboxes",
+                () -> shards.getLocalShards().stream().mapToLong(s -> s.getIndex().getRejectedCount()).sum());
+        registry.gauge("gamebot_events_in_flight", "Message and reaction events being handled", admission::getInFlight);
+        registry.gauge("gamebot_overloaded", "Whether only essential events are dispatched to games",
+                () -> admission.isOverloaded() ? 1 : 0);
+        registry.gauge("gamebot_timers_pending", "Scheduled game deadlines", timers::getPendingCount);
+        registry.gauge("gamebot_journal_queue_depth", "Game journal records waiting to be written",
+                journal::getQueueDepth);
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The shards run by this process, each owning the games of its guilds
+     */
+    public ShardRouter getShards() {
+        return shards;
+    }
+
+    public MessageParser getParser() {
+        return parser;
+    }
+
+    public CommandRouter getRouter() {
+        return router;
+    }
+
+    public MemberCache getMemberCache() {
+        return memberCache;
+    }
+
+    /**
+     * @return The timer running the deadlines of all games
+     */
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    public long nextGameId() {
+        return gameIds.incrementAndGet();
+    }
+
+    /**
+     * @return The maximum time a game can stay in starting state
+     */
+    public Duration getLobbyTtl() {
+        return lobbyTtl;
+    }
+
+    /**
+     * @return The maximum time an active game can go without activity
+     */
+    public Duration getIdleTtl() {
+        return idleTtl;
+    }
+
+    public BotMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The scheduler of messages sent to many channels at once
+     */
+    public MessageScheduler getMessageScheduler() {
+        return messageScheduler;
+    }
+
+    /**
+     * @return The admission control of events, in front of game dispatch
+     */
+    public AdmissionControl getAdmission() {
+        return admission;
+    }
+
+    /**
+     * @return Whether the timing of each answer is logged, against the time Discord stamped on it
+     */
+    public boolean isTimingDiagnostics() {
+        return timingDiagnostics;
+    }
+
+    public void setTimingDiagnostics(boolean timingDiagnostics) {
+        this.timingDiagnostics = timingDiagnostics;
     }
 
     public Mono<Void> start() {
-        this.client.on(MessageCreateEvent.class, this::onMessage).subscribe();
-        this.client.on(ReactionAddEvent.class, this::onReaction).subscribe();
+        try {
+            leaderboard.load();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open score journal", ex);
+        }
+        recoverGames();
+        Flux.interval(Duration.ofMinutes(1)).subscribe(x -> admission.sweep());
+        this.client.on(MessageCreateEvent.class, evt -> timed(metrics.messageLatency, onMessage(evt, System.nanoTime())))
+                .subscribe();
+        this.client.on(ReactionAddEvent.class, evt -> timed(metrics.reactionLatency, onReaction(evt))).subscribe();
+        this.client.on(MemberUpdateEvent.class).subscribe(evt -> {
+            memberCache.invalidate(evt.getGuildId(), evt.getMemberId());
+            permissions.invalidate(evt.getGuildId(), evt.getMemberId());
+        });
+        this.client.on(MemberLeaveEvent.class).subscribe(evt -> {
+            memberCache.invalidate(evt.getGuildId(), evt.getUser().getId());
+            permissions.invalidate(evt.getGuildId(), evt.getUser().getId());
+        });
+        Flux.merge(
+                this.client.on(RoleUpdateEvent.class).map(evt -> evt.getCurrent().getGuildId()),
+                this.client.on(RoleDeleteEvent.class).map(RoleDeleteEvent::getGuildId),
+                this.client.on(GuildUpdateEvent.class).map(evt -> evt.getCurrent().getId()))
+                .subscribe(permissions::invalidateGuild);
+        Flux.merge(
+                this.client.on(TextChannelCreateEvent.class).map(evt -> evt.getChannel().getGuildId()),
+                this.client.on(TextChannelDeleteEvent.class).map(evt -> evt.getChannel().getGuildId()),
+                this.client.on(TextChannelUpdateEvent.class).map(evt -> evt.getCurrent().getGuildId()),
+                this.client.on(NewsChannelCreateEvent.class).map(evt -> evt.getChannel().getGuildId()),
+                this.client.on(NewsChannelDeleteEvent.class).map(evt -> evt.getChannel().getGuildId()),
+                this.client.on(NewsChannelUpdateEvent.class).map(evt -> evt.getCurrent().getGuildId()),
+                this.client.on(CategoryCreateEvent.class).map(evt -> evt.getCategory().getGuildId()),
+                this.client.on(CategoryDeleteEvent.class).map(evt -> evt.getCategory().getGuildId()),
+                this.client.on(CategoryUpdateEvent.class).map(evt -> evt.getCurrent().getGuildId()))
+                .flatMap(this::onChannelsChange)
+                .subscribe();
         return this.client.updatePresence(Presence.online());
     }
 
-    private Mono<Void> onMessage(MessageCreateEvent evt) {
-        if (evt.getMessage().getAuthor().isEmpty()) return Mono.empty(); // Ignore system messages
+    /**
+     * Rebuilds the games running before a restart from the journal, then starts journaling
+     */
+    private void recoverGames() {
+        Map<Long, GameInstance> replayed = new HashMap<>();
+        try {
+            journal.replay((gameId, type, in) -> {
+                gameIds.accumulateAndGet(gameId, Math::max);
+                GameInstance game = replayed.get(gameId);
+                if (game != null) game.replay(type, in);
+                else {
+                    game = GameInstance.replay(this, gameId, type, in);
+                    if (game != null) replayed.put(gameId, game);
+                }
+            });
+            journal.start(sink -> {
+                for (GameInstance game : shards.getInstances()) game.snapshot(sink);
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open game journal", ex);
+        }
+        Flux.fromIterable(replayed.values())
+                .flatMap(game -> game.recover().onErrorResume(err -> {
+                    LOG.warn("Error while recovering game", err);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    /**
+     * Records the time until a handler completes, including the REST calls it waits for
+     * Handlers in flight are counted, too many of them put the bot in overload mode
+     */
+    private Mono<Void> timed(MetricRegistry.Distribution latency, Mono<Void> handler) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            if (admission.onStart()) LOG.warn("Overloaded, shedding non-essential events");
+            return handler.doFinally(sig -> {
+                latency.record(System.nanoTime() - start);
+                if (admission.onEnd()) LOG.info("No longer overloaded");
+            });
+        });
+    }
+
+    /**
+     * @param receivedAt When the message was received from the gateway, games use it to time answers
+     */
+    private Mono<Void> onMessage(MessageCreateEvent evt, long receivedAt) {
+        metrics.messagesReceived.increment();
+        if (evt.getMessage().getAuthor().isEmpty()) return filtered(metrics.messagesFiltered); // Ignore system messages
         User author = evt.getMessage().getAuthor().get();
-        if (author.getId().equals(client.getSelfId())) return Mono.empty(); // Ignore self messages
+        if (author.getId().equals(client.getSelfId())) return filtered(metrics.messagesFiltered); // Ignore self messages
         String msg = evt.getMessage().getContent();
         if (evt.getGuildId().isEmpty()) { // PM
             LOG.debug("Received direct message: "+msg);
@@ -62,59 +312,206 @@ public class GameBot {
                 LOG.info("Got quit message: "+author.getUsername());
                 return this.client.logout();
             }
+            Collection<GameInstance> games = shards.getByPlayer(author.getId());
+            if (games.isEmpty()) return Mono.empty();
+            if (!admit(0, author.getId().asLong(), false, metrics.messagesShedGuild, metrics.messagesShedUser))
+                return Mono.empty();
+            boolean overloaded = admission.isOverloaded();
             return Flux.fromIterable(games)
                     .filter(g -> g.getState() == GameInstance.State.ACTIVE)
-                    .flatMap(g -> g.onDirectMessage(evt))
+                    .filter(g -> !overloaded || isEssential(g.isEssential(evt), metrics.messagesShedOverload))
+                    .flatMap(g -> {
+                        metrics.messagesDispatched.increment();
+                        return g.onDirectMessage(evt, receivedAt);
+                    })
                     .then();
         }
         Snowflake guildId = evt.getGuildId().get();
-        if (msg.startsWith("%start ")) {
-            LOG.info("Got start action: "+author.getUsername()+"/g:"+guildId.asLong()+" >> "+msg);
-            if (evt.getMember().isEmpty()) return Mono.empty();
-            return //* // Security: Check host has Manage Guild permission
-                    evt.getMember().get().getBasePermissions()
-                    .map(perms -> perms.contains(Permission.MANAGE_GUILD))
-                    .filter(Boolean::booleanValue)
-                    .switchIfEmpty(evt.getMessage().getChannel()
-                            .flatMap(chan -> chan.createMessage(s -> s.setContent("Nope!")))
-                            .thenReturn(false))
-                    .filter(Boolean::booleanValue)
-                    //*/ Mono.just(0)
-                    .flatMap(x -> {
-                        // Build game instance
-                        String typeName = msg.substring(7);
-                        GameSpec<?> specs;
-                        try {
-                            specs = GameSpec.of(typeName);
-                        } catch (NullPointerException ex) {
-                            return evt.getMessage().addReaction(ReactionEmoji.unicode("❓"));
-                        }
-                        GameInstance game = new GameInstance(client, guildId, specs);
-                        games.add(game);
-                        // Start game instance
-                        return evt.getMessage().getChannel()
-                                .ofType(GuildMessageChannel.class)
-                                .zipWith(Mono.justOrEmpty(evt.getMember()))
-                                .flatMap(TupleUtils.function(game::start));
-                    });
+        ShardRouter.Shard shard = shards.getShard(guildId);
+        if (shard == null) return filtered(metrics.messagesFiltered); // Guild owned by another process
+        CommandRouter.Invocation cmd = router.parse(msg);
+        if (cmd != null) {
+            if (!admit(guildId.asLong(), author.getId().asLong(), false,
+                    metrics.messagesShedGuild, metrics.messagesShedUser)) return Mono.empty();
+            return onCommand(evt, shard, guildId, author, cmd);
         }
+        // Games only read guild messages mentioning the bot, other chatter is neither limited nor dispatched
+        if (parser.stripSelfMention(msg) == null) return filtered(metrics.messagesFiltered);
+        Collection<GameInstance> games = shard.getIndex().getActive(guildId);
+        if (games.isEmpty()) return Mono.empty();
+        boolean essential = games.stream().anyMatch(g -> g.isEssential(evt));
+        if (!admit(guildId.asLong(), author.getId().asLong(), essential,
+                metrics.messagesShedGuild, metrics.messagesShedUser)) return Mono.empty();
         // Dispatch messages to active games
+        boolean overloaded = admission.isOverloaded();
         return Flux.fromIterable(games)
                 .filter(g -> g.getState() == GameInstance.State.ACTIVE)
-                .filter(g -> g.getGuildId().equals(guildId))
-                .flatMap(g -> g.onGuildMessage(evt))
+                .filter(g -> !overloaded || isEssential(g.isEssential(evt), metrics.messagesShedOverload))
+                .flatMap(g -> {
+                    metrics.messagesDispatched.increment();
+                    return g.onGuildMessage(evt, receivedAt);
+                })
+                .then();
+    }
+
+    private Mono<Void> onCommand(MessageCreateEvent evt, ShardRouter.Shard shard, Snowflake guildId, User author,
+                                 CommandRouter.Invocation cmd) {
+        GameRegistry.GameType<?> type = cmd.getGameType();
+        switch (cmd.getCommand()) {
+            case START:
+                LOG.info("Got start action: "+author.getUsername()+"/g:"+guildId.asLong()+" >> "+evt.getMessage().getContent());
+                if (type == null) return evt.getMessage().addReaction(ReactionEmoji.unicode("❓"));
+                if (type.needsDirectMessages() && !shards.receivesDirectMessages()) // Host messages would be lost
+                    return evt.getMessage().getChannel()
+                            .flatMap(chan -> chan.createMessage("*Ce jeu n'est pas disponible sur ce serveur.*"))
+                            .then();
+                return checkManager(evt).flatMap(member -> {
+                    // Build game instance, options follow the type name
+                    GameInstance game = new GameInstance(this, guildId, GameSpec.of(type, cmd.getArgs()));
+                    shard.getIndex().add(game);
+                    // Start game instance
+                    return evt.getMessage().getChannel()
+                            .ofType(GuildMessageChannel.class)
+                            .flatMap(chan -> game.start(chan, member));
+                });
+            case STOP:
+                LOG.info("Got stop action: "+author.getUsername()+"/g:"+guildId.asLong()+" >> "+evt.getMessage().getContent());
+                if (type == null && !cmd.getArgs().isEmpty())
+                    return evt.getMessage().addReaction(ReactionEmoji.unicode("❓"));
+                return checkManager(evt).flatMapMany(member -> Flux.fromIterable(shard.getIndex().getRunning(guildId)))
+                        .filter(g -> type == null || g.getTypeName().equals(type.name))
+                        .flatMap(GameInstance::stop)
+                        .then();
+            case STATUS:
+                return evt.getMessage().getChannel()
+                        .flatMap(chan -> chan.createMessage(showStatus(shard, guildId)))
+                        .then();
+            case LEADERBOARD:
+                return evt.getMessage().getChannel()
+                        .flatMap(chan -> chan.createMessage(showLeaderboard(guildId, author.getId())))
+                        .then();
+            case GAME:
+                return Flux.fromIterable(shard.getIndex().getRunning(guildId))
+                        .filter(g -> g.getTypeName().equals(type.name))
+                        .flatMap(g -> {
+                            metrics.messagesDispatched.increment();
+                            return g.onCommand(evt, cmd.getArgs());
+                        })
+                        .then();
+            default:
+                return Mono.empty();
+        }
+    }
+
+    /**
+     * Security: checks the author of a command has the Manage Guild permission
+     * @return The author, or empty after replying if not allowed
+     */
+    private Mono<Member> checkManager(MessageCreateEvent evt) {
+        if (evt.getMember().isEmpty()) return Mono.empty();
+        Member member = evt.getMember().get();
+        return permissions.canManage(member)
+                .filter(Boolean::booleanValue)
+                .map(x -> member)
+                .switchIfEmpty(evt.getMessage().getChannel()
+                        .flatMap(chan -> chan.createMessage(s -> s.setContent("Nope!")))
+                        .then(Mono.empty()));
+    }
+
+    /**
+     * @return The running games of a guild
+     */
+    private String showStatus(ShardRouter.Shard shard, Snowflake guildId) {
+        Collection<GameInstance> games = shard.getIndex().getRunning(guildId);
+        if (games.isEmpty()) return "*Aucune partie en cours.*";
+        StringBuilder msg = new StringBuilder("**Parties en cours**\n");
+        for (GameInstance game : games) {
+            GameInstance.State state = game.getState();
+            if (state == GameInstance.State.INACTIVE) continue;
+            msg.append(" • ").append(game.getTypeName())
+                    .append(state == GameInstance.State.STARTING ? " : en attente, " : " : en cours, ")
+                    .append(game.getPlayers().size()).append(" joueur(s)\n");
+        }
+        return msg.toString();
+    }
+
+    /**
+     * @return The top players of a guild, and the rank of the requesting player
+     */
+    private String showLeaderboard(Snowflake guildId, Snowflake userId) {
+        List<Leaderboard.Score> top = leaderboard.getTop(guildId, 10);
+        if (top.isEmpty()) return "*Aucun score pour le moment.*";
+        StringBuilder msg = new StringBuilder("**Classement**\n");
+        for (Leaderboard.Score score : top) {
+            msg.append(score.getRank()).append(") ").append(memberCache.getDisplayName(guildId, score.getPlayerId()))
+                    .append(" : ").append(score.getPoints()).append(" pts\n");
+        }
+        leaderboard.getScore(guildId, userId).ifPresent(score -> msg.append("\nVous êtes ")
+                .append(score.getRank()).append(score.getRank() == 1 ? "er" : "ème")
+                .append(" avec ").append(score.getPoints()).append(" pts"));
+        return msg.toString();
+    }
+
+    private Mono<Void> onChannelsChange(Snowflake guildId) {
+        ShardRouter.Shard shard = shards.getShard(guildId);
+        if (shard == null) return Mono.empty();
+        return Flux.fromIterable(shard.getIndex().getActive(guildId))
+                .flatMap(GameInstance::onChannelsChange)
                 .then();
     }
 
     private Mono<Void> onReaction(ReactionAddEvent evt) {
-        if (evt.getUserId().equals(client.getSelfId())) return Mono.empty(); // Ignore self reactions
+        metrics.reactionsReceived.increment();
+        if (evt.getUserId().equals(client.getSelfId())) return filtered(metrics.reactionsFiltered); // Ignore self reactions
+        // Guild reactions go to the game owning the message, direct ones to the games of the player
+        Collection<GameInstance> games;
+        if (evt.getGuildId().isPresent()) {
+            ShardRouter.Shard shard = shards.getShard(evt.getGuildId().get());
+            GameInstance owner = shard != null ? shard.getIndex().getByMessage(evt.getChannelId(), evt.getMessageId()) : null;
+            if (owner == null) return filtered(metrics.reactionsFiltered); // Not a game message
+            games = Collections.singletonList(owner);
+        } else {
+            games = shards.getByPlayer(evt.getUserId());
+            if (games.isEmpty()) return Mono.empty();
+        }
+        boolean essential = games.stream().anyMatch(g -> g.isEssential(evt));
+        if (!admit(evt.getGuildId().map(Snowflake::asLong).orElse(0L), evt.getUserId().asLong(), essential,
+                metrics.reactionsShedGuild, metrics.reactionsShedUser)) return Mono.empty();
+        boolean overloaded = admission.isOverloaded();
         return Flux.fromIterable(games)
                 .filter(g -> g.getState() != GameInstance.State.INACTIVE)
-                .filter(g -> g.getState() == GameInstance.State.STARTING || g.getPlayers().contains(evt.getUserId()))
-                .flatMap(g -> g.onReaction(evt))
+                .filter(g -> g.getState() == GameInstance.State.STARTING || g.getPlayers().contains(evt.getUserId().asLong()))
+                .filter(g -> !overloaded || isEssential(g.isEssential(evt), metrics.reactionsShedOverload))
+                .flatMap(g -> {
+                    metrics.reactionsDispatched.increment();
+                    return g.onReaction(evt);
+                })
                 .then();
     }
 
+    /**
+     * Takes a token from the buckets of the user and of the guild of an event
+     * @return Whether the event is admitted, otherwise it is counted as shed
+     */
+    private boolean admit(long guildId, long userId, boolean essential,
+                          MetricRegistry.Counter guildShed, MetricRegistry.Counter userShed) {
+        switch (admission.admit(guildId, userId, essential)) {
+            case GUILD_LIMITED: guildShed.increment(); return false;
+            case USER_LIMITED: userShed.increment(); return false;
+            default: return true;
+        }
+    }
+
+    private static boolean isEssential(boolean essential, MetricRegistry.Counter shed) {
+        if (!essential) shed.increment();
+        return essential;
+    }
+
+    private static Mono<Void> filtered(MetricRegistry.Counter counter) {
+        counter.increment();
+        return Mono.empty();
+    }
+
     public static void main(String[] args) {
         LOG.info("Starting GameBot (v"+VERSION+")");
 
@@ -126,14 +523,132 @@ public class GameBot {
         }
 
         // Register game types
-        GameRegistry.get().register("quizz", QuizzGame::new);
+        GameRegistry.get().register("quizz", IntentSet.of(Intent.DIRECT_MESSAGES), QuizzGame::new);
 
-        // Build discord client
-        DiscordClient initClient = DiscordClientBuilder.create(discordBotToken).build();
-        GatewayDiscordClient gwClient = initClient.login().block();
+        // Build discord client, connecting the shards of this process
+        int shardCount = getShardCount(System.getenv("GAMEBOT_SHARD_COUNT"));
+        int[] shardIndices = getShardIndices(System.getenv("GAMEBOT_SHARDS"), shardCount);
+        LOG.info("Running shards "+Arrays.toString(shardIndices)+" of "+shardCount);
+        BotMetrics metrics = new BotMetrics(new MetricRegistry());
+        MessageScheduler messageScheduler = new MessageScheduler();
+        DiscordClient initClient = DiscordClientBuilder.create(discordBotToken)
+                .setReactorResources(ReactorResources.builder()
+                        .httpClient(ReactorResources.DEFAULT_HTTP_CLIENT.get()
+                                .doOnResponse((res, conn) -> {
+                                    metrics.onRestResponse(res);
+                                    messageScheduler.onResponse(res);
+                                }))
+                        .build())
+                .build();
+        ShardRouter shards = new ShardRouter(shardCount, shardIndices);
+        if (!shards.receivesDirectMessages()) {
+            for (GameRegistry.GameType<?> type : GameRegistry.get().getTypes()) {
+                if (type.needsDirectMessages())
+                    LOG.warn("Game "+type.getName()+" needs direct messages, it can only be played with shard 0");
+            }
+        }
+        GatewayConfig gatewayConfig = GatewayConfig.fromEnv(GameRegistry.get());
+        LOG.info("Gateway: "+gatewayConfig);
+        GatewayDiscordClient gwClient = gatewayConfig.apply(initClient.gateway(), shards)
+                .setSharding(ShardingStrategy.builder().count(shardCount).indices(shardIndices).build())
+                .login().block();
+
+        // Open game journal
+        String journalPath = System.getenv().getOrDefault("GAMEBOT_JOURNAL", "gamebot.journal");
+        Journal journal = new Journal("game-journal", Paths.get(journalPath), Duration.ofMillis(50), 16 * 1024 * 1024);
+
+        // Open score journal
+        String scoresPath = System.getenv().getOrDefault("GAMEBOT_SCORES", "gamebot.scores");
+        Journal scores = new Journal("score-journal", Paths.get(scoresPath), Duration.ofMillis(200), 4 * 1024 * 1024);
+
+        // Admission control: sustained rate and burst of events per guild and per user
+        int guildRate = getIntEnv("GAMEBOT_GUILD_RATE", 50);
+        int userRate = getIntEnv("GAMEBOT_USER_RATE", 2);
+        AdmissionControl admission = new AdmissionControl(guildRate, 4 * guildRate, userRate, 5 * userRate,
+                getIntEnv("GAMEBOT_MAX_IN_FLIGHT", 2000));
 
         // Start game bot
-        GameBot bot = new GameBot(gwClient);
+        GameBot bot = new GameBot(gwClient, shards, metrics, messageScheduler, admission,
+                journal, new Leaderboard(scores),
+                getDurationEnv("GAMEBOT_LOBBY_TTL", Duration.ofMinutes(30)),
+                getDurationEnv("GAMEBOT_IDLE_TTL", Duration.ofHours(2)));
+        bot.setTimingDiagnostics(Boolean.parseBoolean(System.getenv("GAMEBOT_TIMING_DIAGNOSTICS")));
+        int metricsPort = getIntEnv("GAMEBOT_METRICS_PORT", 0);
+        if (metricsPort > 0) {
+            String metricsHost = System.getenv().getOrDefault("GAMEBOT_METRICS_HOST", "127.0.0.1");
+            try {
+                new MetricsServer(metrics.getRegistry(), new InetSocketAddress(metricsHost, metricsPort)).start();
+            } catch (IOException ex) {
+                LOG.error("Cannot serve metrics on port "+metricsPort, ex);
+            }
+        }
         bot.start().then(bot.client.onDisconnect()).block();
+        try {
+            journal.close();
+            scores.close();
+        } catch (IOException ex) {
+            LOG.warn("Failed to close journals", ex);
+        }
+    }
+
+    private static int getIntEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            LOG.warn("Invalid number for "+name+": "+value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the number of shards of the bot, 1 if not set
+     */
+    private static int getShardCount(String value) {
+        if (value == null || value.isBlank()) return 1;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid GAMEBOT_SHARD_COUNT: "+value+", expected a number of shards");
+        }
+    }
+
+    /**
+     * Parses the shards run by this process, e.g. "0,2-3", all shards if not set
+     */
+    private static int[] getShardIndices(String value, int shardCount) {
+        if (value == null || value.isBlank()) return IntStream.range(0, shardCount).toArray();
+        IntStream.Builder indices = IntStream.builder();
+        for (String part : value.split(",")) {
+            String[] range = part.trim().split("-", 2);
+            int from;
+            int to;
+            try {
+                from = Integer.parseInt(range[0].trim());
+                to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+            } catch (NumberFormatException ex) {
+                from = to = -1;
+            }
+            if (from < 0 || to < from)
+                throw new IllegalArgumentException("Invalid GAMEBOT_SHARDS: "+value+
+                        ", expected shard indices or ranges separated by commas, e.g. 0,2-3");
+            for (int i = from; i <= to; i++) indices.add(i);
+        }
+        return indices.build().distinct().toArray();
+    }
+
+    /**
+     * Reads a duration in minutes from the environment
+     */
+    private static Duration getDurationEnv(String name, Duration defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) return defaultValue;
+        try {
+            return Duration.ofMinutes(Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            LOG.warn("Invalid duration for "+name+": "+value);
+            return defaultValue;
+        }
     }
 }
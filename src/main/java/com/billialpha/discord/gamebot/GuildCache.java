@@ -0,0 +1,97 @@
+package com.billialpha.discord.gamebot;
+
+import discord4j.common.util.Snowflake;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of values by guild and member, e.g. how members are displayed or what they may do
+ *
+ * Each guild keeps a bounded number of members, evicting the least recently used one.
+ * Entries expire after a fixed time, and can be invalidated by member or by guild.
+ */
+public class GuildCache<V> {
+    private final Map<Snowflake, GuildEntries<V>> guilds;
+    private final int maxSizePerGuild;
+    private final long ttlMillis;
+
+    public GuildCache(int maxSizePerGuild, Duration ttl) {
+        this.guilds = new ConcurrentHashMap<>();
+        this.maxSizePerGuild = maxSizePerGuild;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The cached value of a member, or null if unknown or expired
+     */
+    public V get(Snowflake guildId, Snowflake userId) {
+        GuildEntries<V> entries = guilds.get(guildId);
+        return entries != null ? entries.get(userId, System.currentTimeMillis()) : null;
+    }
+
+    // --- Modifiers ---
+
+    public void put(Snowflake guildId, Snowflake userId, V value) {
+        guilds.computeIfAbsent(guildId, id -> new GuildEntries<>(maxSizePerGuild))
+                .put(userId, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void invalidate(Snowflake guildId, Snowflake userId) {
+        GuildEntries<V> entries = guilds.get(guildId);
+        if (entries != null) entries.remove(userId);
+    }
+
+    public void invalidateGuild(Snowflake guildId) {
+        guilds.remove(guildId);
+    }
+
+    // --- Subclasses ---
+
+    private static class GuildEntries<V> extends LinkedHashMap<Snowflake, Entry<V>> {
+        private final int maxSize;
+
+        GuildEntries(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        synchronized V get(Snowflake userId, long now) {
+            Entry<V> entry = get(userId);
+            if (entry == null) return null;
+            if (entry.expiresAt < now) {
+                remove(userId);
+                return null;
+            }
+            return entry.value;
+        }
+
+        @Override
+        public synchronized Entry<V> put(Snowflake userId, Entry<V> entry) {
+            return super.put(userId, entry);
+        }
+
+        synchronized void remove(Snowflake userId) {
+            super.remove(userId);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Snowflake, Entry<V>> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
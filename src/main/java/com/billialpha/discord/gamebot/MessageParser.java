@@ -0,0 +1,38 @@
+package com.billialpha.discord.gamebot;
+
+import discord4j.common.util.Snowflake;
+
+/**
+ * Extracts command arguments and bot mentions from message contents
+ *
+ * Built once for the bot user, parsing is a single pass over the message without regular expressions.
+ */
+public class MessageParser {
+    private final String selfId;
+
+    public MessageParser(Snowflake selfId) {
+        this.selfId = selfId.asString();
+    }
+
+    /**
+     * Parses a message starting with a mention of the bot, either {@code <@id>} or {@code <@!id>}
+     * @return The trimmed text following the mention, or null if the message doesn't start with one
+     */
+    public String stripSelfMention(String msg) {
+        int len = msg.length();
+        if (len < selfId.length() + 3 || msg.charAt(0) != '<' || msg.charAt(1) != '@') return null;
+        int pos = 2;
+        if (msg.charAt(pos) == '!') pos++;
+        if (!msg.startsWith(selfId, pos)) return null;
+        pos += selfId.length();
+        if (pos >= len || msg.charAt(pos) != '>') return null;
+        return trimmedFrom(msg, pos + 1);
+    }
+
+    private static String trimmedFrom(String msg, int start) {
+        int end = msg.length();
+        while (start < end && msg.charAt(start) <= ' ') start++;
+        while (end > start && msg.charAt(end - 1) <= ' ') end--;
+        return msg.substring(start, end);
+    }
+}
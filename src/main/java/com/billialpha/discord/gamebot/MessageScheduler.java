@@ -0,0 +1,230 @@
+package com.billialpha.discord.gamebot;
+
+import discord4j.common.util.Snowflake;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Schedules messages sent to many channels at once, so they are delivered as close together as possible
+ *
+ * The rate limit of each channel is tracked locally from the headers of previous responses:
+ * a channel out of quota is sent to when its bucket resets instead of hitting a 429 and being retried.
+ * Requests beyond the quota are counted against the following windows, so a burst is spread over as many
+ * windows as it needs instead of being sent all at once on the first reset.
+ * When every channel can be sent to within a short window, all sends wait for the slowest one.
+ * Buckets are forgotten once reset, as the quota of a channel is unknown again until its next response.
+ */
+public class MessageScheduler {
+    private static final long ALIGN_WINDOW_NANOS = Duration.ofMillis(250).toNanos();
+    private static final long SWEEP_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+    private final Map<Long, Bucket> buckets;
+    private final AtomicLong nextSweep;
+
+    public MessageScheduler() {
+        this.buckets = new ConcurrentHashMap<>();
+        this.nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The number of channels whose rate limit is tracked
+     */
+    int getBucketCount() {
+        return buckets.size();
+    }
+
+    // --- Actions ---
+
+    /**
+     * Updates the rate limit of a channel from a message creation response
+     */
+    public void onResponse(HttpClientResponse response) {
+        if (!response.method().name().equals("POST")) return;
+        String path = response.path();
+        if (!path.endsWith("/messages")) return;
+        int end = path.length() - "/messages".length();
+        int start = path.lastIndexOf('/', end - 1) + 1;
+        if (start <= 0 || !path.startsWith("channels/", start - "channels/".length())) return;
+        String remaining = response.responseHeaders().get("X-RateLimit-Remaining");
+        String limit = response.responseHeaders().get("X-RateLimit-Limit");
+        String resetAfter = response.responseHeaders().get("X-RateLimit-Reset-After");
+        if (remaining == null || resetAfter == null) return;
+        try {
+            int remainingCount = Integer.parseInt(remaining);
+            update(Long.parseLong(path.substring(start, end)), remainingCount,
+                    limit == null ? remainingCount + 1 : Integer.parseInt(limit),
+                    (long) (Double.parseDouble(resetAfter) * 1e9), System.nanoTime());
+        } catch (NumberFormatException ex) {
+            // Not a channel route, or malformed headers: keep the local estimate
+        }
+    }
+
+    /**
+     * Updates the rate limit of a channel, and forgets the buckets reset since the last sweep
+     */
+    void update(long channelId, int remaining, int limit, long resetAfterNanos, long now) {
+        buckets.compute(channelId, (id, bucket) -> {
+            if (bucket == null) bucket = new Bucket();
+            bucket.update(remaining, limit, resetAfterNanos, now);
+            return bucket;
+        });
+        long sweep = nextSweep.get();
+        if (now - sweep >= 0 && nextSweep.compareAndSet(sweep, now + SWEEP_INTERVAL_NANOS)) {
+            for (Long id : buckets.keySet()) evict(id, now);
+        }
+    }
+
+    /**
+     * Takes a request from the quota of a channel
+     * @return The time to wait before sending, in nanoseconds
+     */
+    long reserve(long channelId, long now) {
+        Bucket bucket = buckets.get(channelId);
+        if (bucket == null) return 0; // Unknown quota
+        long delay = bucket.reserve(now);
+        if (bucket.isReset(now)) evict(channelId, now);
+        return delay;
+    }
+
+    /**
+     * Forgets the bucket of a channel if it was reset, atomically with updates
+     */
+    private void evict(long channelId, long now) {
+        buckets.computeIfPresent(channelId, (id, bucket) -> bucket.isReset(now) ? null : bucket);
+    }
+
+    /**
+     * Sends a message to each channel, starting at a rotating offset so no channel is always the last served
+     * @return The delivery report, once every send completed
+     */
+    public Mono<FanOut> fanOut(List<Snowflake> channels, int rotation, Function<Snowflake, Mono<?>> send) {
+        if (channels.isEmpty()) return Mono.just(new FanOut(0, 0, 0));
+        return Mono.defer(() -> {
+            int n = channels.size();
+            long now = System.nanoTime();
+            long[] delays = new long[n];
+            long maxDelay = 0;
+            for (int i = 0; i < n; i++) {
+                Snowflake channel = channels.get(Math.floorMod(rotation + i, n));
+                delays[i] = reserve(channel.asLong(), now);
+                maxDelay = Math.max(maxDelay, delays[i]);
+            }
+            if (maxDelay <= ALIGN_WINDOW_NANOS) Arrays.fill(delays, maxDelay); // Align everyone
+            AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+            AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+            return Flux.range(0, n)
+                    .flatMap(i -> {
+                        Snowflake channel = channels.get(Math.floorMod(rotation + i, n));
+                        Mono<?> delivery = Mono.defer(() -> send.apply(channel))
+                                .doOnSuccess(x -> {
+                                    long done = System.nanoTime();
+                                    first.accumulateAndGet(done, Math::min);
+                                    last.accumulateAndGet(done, Math::max);
+                                });
+                        return delays[i] > 0 ? Mono.delay(Duration.ofNanos(delays[i])).then(delivery) : delivery;
+                    }, n)
+                    .count()
+                    .map(count -> new FanOut(count, count > 0 ? first.get() - now : 0,
+                            count > 0 ? last.get() - first.get() : 0));
+        });
+    }
+
+    // --- Subclasses ---
+
+    /**
+     * The report of a fan-out
+     */
+    public static class FanOut {
+        private final long sent;
+        private final long firstDeliveryNanos;
+        private final long spreadNanos;
+
+        FanOut(long sent, long firstDeliveryNanos, long spreadNanos) {
+            this.sent = sent;
+            this.firstDeliveryNanos = firstDeliveryNanos;
+            this.spreadNanos = spreadNanos;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * @return The time from scheduling to the first delivery
+         */
+        public Duration getFirstDelivery() {
+            return Duration.ofNanos(firstDeliveryNanos);
+        }
+
+        /**
+         * @return The time between the first and the last delivery
+         */
+        public Duration getSpread() {
+            return Duration.ofNanos(spreadNanos);
+        }
+    }
+
+    /**
+     * The local estimate of the rate limit bucket of a channel
+     */
+    private static class Bucket {
+        private int remaining; // Left in the window requests are reserved in
+        private int limit;
+        private long startAt; // Start of the window requests are reserved in, later than now once the quota is spent
+        private long resetAt;
+        private long window; // Longest reset delay seen, the length of a window
+        private boolean known; // Unknown until a response tells the quota: requests are not delayed
+
+        /**
+         * @return Whether the bucket was reset, its quota is unknown
+         */
+        synchronized boolean isReset(long now) {
+            return !known || now - resetAt >= 0;
+        }
+
+        /**
+         * Takes the quota of a response, unless requests are already reserved in a later window
+         */
+        synchronized void update(int remaining, int limit, long resetAfter, long now) {
+            long resetAt = now + resetAfter;
+            this.window = Math.max(window, resetAfter);
+            this.limit = limit;
+            if (!known || now - this.resetAt >= 0 || resetAt - this.resetAt > window / 2) { // A new window
+                this.remaining = remaining;
+                this.startAt = now;
+                this.resetAt = resetAt;
+                this.known = true;
+            } else if (this.resetAt - resetAt <= window / 2) { // The window of the reservations
+                this.remaining = Math.min(this.remaining, remaining);
+            } // Else the response is from a window before the reservations, already counted
+        }
+
+        /**
+         * Takes a request from the quota
+         * @return The time to wait before sending, in nanoseconds
+         */
+        synchronized long reserve(long now) {
+            if (!known || now - resetAt >= 0) { // Bucket reset: the quota is unknown again
+                known = false;
+                return 0;
+            }
+            if (remaining <= 0) { // Reserve in the next window
+                startAt = resetAt;
+                resetAt += window;
+                remaining = Math.max(limit, 1);
+            }
+            remaining--;
+            return Math.max(startAt - now, 0);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.billialpha.discord.gamebot;
+
+import com.billialpha.discord.gamebot.games.GameIndex;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import discord4j.common.util.Snowflake;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes guilds to the gateway shard receiving their events
+ *
+ * Each shard run by this process has its own game index and event scheduler, so games of
+ * different shards never contend. Guilds of shards run by other processes are not owned here.
+ *
+ * Direct messages are not bound to a guild and Discord sends them to shard 0 only, they are not
+ * forwarded between processes: games driven by direct messages only run in the process of shard 0.
+ */
+public class ShardRouter {
+    private final int shardCount;
+    private final Shard[] shards; // By shard index, null if run by another process
+    private final List<Shard> localShards;
+
+    /**
+     * @param shardCount The total number of shards, across all processes
+     * @param indices The shards run by this process
+     */
+    public ShardRouter(int shardCount, int[] indices) {
+        if (shardCount < 1) throw new IllegalArgumentException("Invalid shard count: "+shardCount);
+        this.shardCount = shardCount;
+        this.shards = new Shard[shardCount];
+        List<Shard> local = new ArrayList<>(indices.length);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, indices.length));
+        for (int index : indices) {
+            if (index < 0 || index >= shardCount) throw new IllegalArgumentException("Invalid shard index: "+index);
+            if (shards[index] != null) continue;
+            shards[index] = new Shard(index, Schedulers.newParallel("game-events-"+index, threads));
+            local.add(shards[index]);
+        }
+        this.localShards = Collections.unmodifiableList(local);
+    }
+
+    // --- Getters ---
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return The shards run by this process
+     */
+    public List<Shard> getLocalShards() {
+        return localShards;
+    }
+
+    /**
+     * @return The index of the shard receiving the events of a guild, as computed by Discord
+     */
+    public int getShardIndex(Snowflake guildId) {
+        return (int) ((guildId.asLong() >>> 22) % shardCount);
+    }
+
+    /**
+     * @return Whether the games of a guild are run by this process
+     */
+    public boolean isLocal(Snowflake guildId) {
+        return shards[getShardIndex(guildId)] != null;
+    }
+
+    /**
+     * @return The shard owning the games of a guild, or null if run by another process
+     */
+    public Shard getShard(Snowflake guildId) {
+        return shards[getShardIndex(guildId)];
+    }
+
+    /**
+     * @return Whether this process runs shard 0, the only one Discord sends direct messages to
+     */
+    public boolean receivesDirectMessages() {
+        return shards[0] != null;
+    }
+
+    /**
+     * @return The games of a player in every local shard, direct messages are not bound to a guild
+     */
+    public Collection<GameInstance> getByPlayer(Snowflake playerId) {
+        if (localShards.size() == 1) return localShards.get(0).getIndex().getByPlayer(playerId);
+        List<GameInstance> games = new ArrayList<>();
+        for (Shard shard : localShards) games.addAll(shard.getIndex().getByPlayer(playerId));
+        return games;
+    }
+
+    /**
+     * @return Every game of this process
+     */
+    public Collection<GameInstance> getInstances() {
+        if (localShards.size() == 1) return localShards.get(0).getIndex().getInstances();
+        List<GameInstance> games = new ArrayList<>();
+        for (Shard shard : localShards) games.addAll(shard.getIndex().getInstances());
+        return games;
+    }
+
+    // --- Subclasses ---
+
+    /**
+     * The games of a single shard
+     */
+    public static class Shard {
+        private final int index;
+        private final GameIndex games;
+        private final Scheduler eventScheduler;
+
+        Shard(int index, Scheduler eventScheduler) {
+            this.index = index;
+            this.games = new GameIndex();
+            this.eventScheduler = eventScheduler;
+        }
+
+        public int getShardIndex() {
+            return index;
+        }
+
+        public GameIndex getIndex() {
+            return games;
+        }
+
+        /**
+         * @return The scheduler shared by the mailboxes of the games of this shard
+         */
+        public Scheduler getEventScheduler() {
+            return eventScheduler;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.billialpha.discord.gamebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel, running the deadlines of all games on a single thread
+ *
+ * Scheduling and cancelling are O(1), deadlines fire with the precision of a tick.
+ * Tasks run on the timer thread so they must be short, e.g. queue work in a game mailbox.
+ */
+public class TimerWheel {
+    public static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added;
+    private final Queue<Timeout> cancelled;
+    private final AtomicLong pending;
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running;
+    private long tick; // Only accessed by the worker
+
+    /**
+     * @param tickDuration The precision of the timer
+     * @param wheelSize The number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(String name, Duration tickDuration, int wheelSize) {
+        if (tickDuration.isNegative() || tickDuration.isZero()) throw new IllegalArgumentException("Invalid tick duration");
+        if (wheelSize < 1 || wheelSize > 1 << 30) throw new IllegalArgumentException("Invalid wheel size");
+        this.tickNanos = tickDuration.toNanos();
+        int size = 1;
+        while (size < wheelSize) size <<= 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicLong();
+        this.startTime = System.nanoTime();
+        this.running = true;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The number of scheduled timers which have neither fired nor been cancelled
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    // --- Actions ---
+
+    /**
+     * Schedules a task to run once after a delay
+     * @return A handle to cancel the task
+     */
+    public Timeout schedule(Duration delay, Runnable task) {
+        if (!running) throw new IllegalStateException("Timer stopped");
+        long deadline = System.nanoTime() - startTime + Math.max(0, delay.toNanos());
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            long now = waitForNextTick();
+            if (now < 0) break;
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire(now);
+            tick++;
+        }
+        LOG.debug("Timer stopped");
+    }
+
+    /**
+     * @return The current time relative to start, or -1 if stopped while waiting
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        for (;;) {
+            long now = System.nanoTime() - startTime;
+            long sleep = deadline - now;
+            if (sleep <= 0) return now;
+            LockSupport.parkNanos(this, sleep);
+            if (!running) return -1;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) break;
+            if (timeout.state.get() != Timeout.INIT) continue; // Cancelled before being placed
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick); // Deadline already passed: fire on this tick
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    // --- Subclasses ---
+
+    /**
+     * Handle of a scheduled task
+     */
+    public static final class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+        // Bucket links, only accessed by the worker
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(TimerWheel timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(INIT);
+        }
+
+        /**
+         * Cancels the task if it has not run yet
+         * @return Whether the task was cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) return false;
+            timer.pending.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) return;
+            timer.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.error("Error in timer task", t);
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of the timeouts sharing a wheel slot
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == head) head = timeout.next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long now) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= now) timeout.expire();
+                    else LOG.warn("Timer placed in wrong bucket, deadline in "+
+                            TimeUnit.NANOSECONDS.toMillis(timeout.deadline - now)+"ms");
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
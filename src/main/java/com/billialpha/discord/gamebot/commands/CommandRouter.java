@@ -0,0 +1,128 @@
+package com.billialpha.discord.gamebot.commands;
+
+import com.billialpha.discord.gamebot.games.GameRegistry;
+
+/**
+ * Resolves the bot commands of guild messages: {@code %start <type> [options]}, {@code %stop [type]},
+ * {@code %status}, {@code %classement} and {@code %<type> <subcommand>} for the games of a type
+ *
+ * Commands and game types can be shortened to any unambiguous prefix. Messages not starting with the
+ * command prefix are rejected on their first character, before anything is allocated.
+ */
+public class CommandRouter {
+    private final char prefix;
+    private final CommandTrie<Command> commands;
+    private final CommandTrie<GameRegistry.GameType<?>> gameTypes;
+
+    /**
+     * @param registry The game types, read once: types registered later are not routed
+     */
+    public CommandRouter(char prefix, GameRegistry registry) {
+        this.prefix = prefix;
+        this.commands = new CommandTrie<>();
+        for (Command command : Command.values()) {
+            for (String name : command.names) commands.put(name, command);
+        }
+        this.gameTypes = new CommandTrie<>();
+        for (GameRegistry.GameType<?> type : registry.getTypes()) gameTypes.put(type.name, type);
+    }
+
+    // --- Getters ---
+
+    public char getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return The command of a message, or null if it isn't one
+     */
+    public Invocation parse(String msg) {
+        if (msg.isEmpty() || msg.charAt(0) != prefix) return null;
+        int len = msg.length();
+        int nameEnd = tokenEnd(msg, 1);
+        Command command = commands.resolve(msg, 1, nameEnd);
+        if (command == null) {
+            // Not a bot command, maybe a subcommand of a game type
+            GameRegistry.GameType<?> type = gameTypes.resolve(msg, 1, nameEnd);
+            if (type == null) return null;
+            return new Invocation(Command.GAME, type, trimmed(msg, nameEnd, len));
+        }
+        if (!command.typed) return new Invocation(command, null, trimmed(msg, nameEnd, len));
+        // The game type is the first argument
+        int typeStart = skipSpaces(msg, nameEnd);
+        int typeEnd = tokenEnd(msg, typeStart);
+        GameRegistry.GameType<?> type = gameTypes.resolve(msg, typeStart, typeEnd);
+        if (type == null) return new Invocation(command, null, trimmed(msg, typeStart, len));
+        return new Invocation(command, type, trimmed(msg, typeEnd, len));
+    }
+
+    private static int tokenEnd(String msg, int pos) {
+        int len = msg.length();
+        while (pos < len && msg.charAt(pos) > ' ') pos++;
+        return pos;
+    }
+
+    private static int skipSpaces(String msg, int pos) {
+        int len = msg.length();
+        while (pos < len && msg.charAt(pos) <= ' ') pos++;
+        return pos;
+    }
+
+    private static String trimmed(String msg, int start, int end) {
+        start = skipSpaces(msg, start);
+        while (end > start && msg.charAt(end - 1) <= ' ') end--;
+        return start == end ? "" : msg.substring(start, end);
+    }
+
+    // --- Subclasses ---
+
+    public enum Command {
+        START(true, "start"),
+        STOP(true, "stop"),
+        STATUS(false, "status"),
+        LEADERBOARD(false, "classement", "leaderboard"),
+        /** A subcommand handled by the running games of a type */
+        GAME(false);
+
+        private final boolean typed; // Whether the first argument is a game type
+        private final String[] names;
+
+        Command(boolean typed, String... names) {
+            this.typed = typed;
+            this.names = names;
+        }
+    }
+
+    /**
+     * A parsed command
+     */
+    public static class Invocation {
+        private final Command command;
+        private final GameRegistry.GameType<?> gameType;
+        private final String args;
+
+        Invocation(Command command, GameRegistry.GameType<?> gameType, String args) {
+            this.command = command;
+            this.gameType = gameType;
+            this.args = args;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        /**
+         * @return The game type the command applies to, or null if none was given or it is unknown
+         */
+        public GameRegistry.GameType<?> getGameType() {
+            return gameType;
+        }
+
+        /**
+         * @return The trimmed arguments following the command and its game type, empty if none
+         */
+        public String getArgs() {
+            return args;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.billialpha.discord.gamebot.commands;
+
+import java.util.Arrays;
+
+/**
+ * Prefix tree of command names, resolving a name or any unambiguous prefix of it
+ *
+ * Built once at startup, lookups walk a slice of the message without allocating.
+ * Names are matched case-insensitively.
+ */
+public class CommandTrie<T> {
+    private final Node<T> root;
+
+    public CommandTrie() {
+        this.root = new Node<>();
+    }
+
+    // --- Getters ---
+
+    /**
+     * Resolves the name found in {@code text} between {@code start} and {@code end}
+     * @return The value of the exact name, else of the only name starting with it, else null
+     */
+    public T resolve(CharSequence text, int start, int end) {
+        if (start >= end) return null;
+        Node<T> node = root;
+        for (int i = start; i < end && node != null; i++) node = node.child(Character.toLowerCase(text.charAt(i)));
+        if (node == null) return null;
+        return node.value != null ? node.value : node.unique;
+    }
+
+    public T resolve(String name) {
+        return resolve(name, 0, name.length());
+    }
+
+    // --- Modifiers ---
+
+    /**
+     * Adds a name, replacing the value of an existing one
+     */
+    public void put(String name, T value) {
+        if (name.isEmpty()) throw new IllegalArgumentException("Command name cannot be empty");
+        Node<T> node = root;
+        node.addUnder(value);
+        for (int i = 0; i < name.length(); i++) {
+            node = node.childOrCreate(Character.toLowerCase(name.charAt(i)));
+            node.addUnder(value);
+        }
+        node.value = value;
+    }
+
+    // --- Subclasses ---
+
+    private static class Node<T> {
+        private char[] keys = new char[0]; // Sorted
+        private Node<T>[] children = newArray(0);
+        private T value; // Value of the name ending here
+        private T unique; // Only value of the names under this node, null if none or several
+        private boolean shared; // Several values under this node
+
+        Node<T> child(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        Node<T> childOrCreate(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0) return children[pos];
+            pos = -pos - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node<T>[] newChildren = newArray(keys.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, keys.length - pos);
+            newKeys[pos] = c;
+            newChildren[pos] = new Node<>();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[pos];
+        }
+
+        void addUnder(T v) {
+            if (shared) return;
+            if (unique == null) unique = v;
+            else if (unique != v) {
+                unique = null;
+                shared = true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int size) {
+            return (Node<T>[]) new Node[size];
+        }
+    }
+}
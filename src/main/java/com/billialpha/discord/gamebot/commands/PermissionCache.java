@@ -0,0 +1,49 @@
+package com.billialpha.discord.gamebot.commands;
+
+import com.billialpha.discord.gamebot.GuildCache;
+import discord4j.common.util.Snowflake;
+import discord4j.core.object.entity.Member;
+import discord4j.rest.util.Permission;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Per-guild cache of which members may manage games, i.e. have the Manage Guild permission
+ *
+ * Both grants and denials are kept for a bounded number of members per guild, entries expire
+ * after a fixed time and are invalidated when the member, the roles or the guild change.
+ */
+public class PermissionCache {
+    private final GuildCache<Boolean> allowed;
+
+    public PermissionCache(int maxSizePerGuild, Duration ttl) {
+        this.allowed = new GuildCache<>(maxSizePerGuild, ttl);
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return Whether a member has the Manage Guild permission, computed from its roles on a cache miss
+     */
+    public Mono<Boolean> canManage(Member member) {
+        Boolean cached = allowed.get(member.getGuildId(), member.getId());
+        if (cached != null) return Mono.just(cached);
+        return member.getBasePermissions()
+                .map(set -> set.contains(Permission.MANAGE_GUILD))
+                .doOnNext(result -> allowed.put(member.getGuildId(), member.getId(), result));
+    }
+
+    // --- Modifiers ---
+
+    public void invalidate(Snowflake guildId, Snowflake userId) {
+        allowed.invalidate(guildId, userId);
+    }
+
+    /**
+     * Forgets every member of a guild, e.g. when its roles or its owner change
+     */
+    public void invalidateGuild(Snowflake guildId) {
+        allowed.invalidateGuild(guildId);
+    }
+}
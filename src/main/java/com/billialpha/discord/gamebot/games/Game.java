@@ -6,23 +6,96 @@ import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.channel.GuildMessageChannel;
 import reactor.core.publisher.Mono;
 
+import java.io.DataInput;
+import java.io.IOException;
+
 /**
  * The interface to be implemented by all games
  */
 public interface Game {
+    /** The first journal record type available to games, lower types are used by {@link GameInstance} */
+    int FIRST_RECORD_TYPE = 16;
+
     default Mono<Void> onStart(GuildMessageChannel chan, Member player) {
         return Mono.empty();
     }
 
-    default Mono<Void> onGuildMessage(MessageCreateEvent evt) {
+    /**
+     * Called for guild messages starting with a mention of the bot
+     * @param receivedAt When the message was received from the gateway, by {@link System#nanoTime()}
+     */
+    default Mono<Void> onGuildMessage(MessageCreateEvent evt, long receivedAt) {
         return Mono.empty();
     }
 
-    default Mono<Void> onDirectMessage(MessageCreateEvent evt) {
+    /**
+     * @param receivedAt When the message was received from the gateway, by {@link System#nanoTime()}
+     */
+    default Mono<Void> onDirectMessage(MessageCreateEvent evt, long receivedAt) {
         return Mono.empty();
     }
 
+    /**
+     * Called for reactions to the messages of the game, and for direct message reactions of its players
+     */
     default Mono<Void> onReaction(ReactionAddEvent evt) {
         return Mono.empty();
     }
+
+    /**
+     * Handles a {@code %<type> <args>} command sent in the guild of the game
+     */
+    default Mono<Void> onCommand(MessageCreateEvent evt, String args) {
+        return Mono.empty();
+    }
+
+    /**
+     * Tells whether a message must still reach the game while the bot is overloaded or its guild limited
+     * Called outside of the game mailbox, concurrently with the handlers
+     */
+    default boolean isEssential(MessageCreateEvent evt) {
+        return true;
+    }
+
+    /**
+     * Tells whether a reaction must still reach the game while the bot is overloaded or its guild limited
+     * Called outside of the game mailbox, concurrently with the handlers
+     */
+    default boolean isEssential(ReactionAddEvent evt) {
+        return true;
+    }
+
+    default Mono<Void> onExpire() {
+        return Mono.empty();
+    }
+
+    /**
+     * Called when a guild manager stops the game, it is already inactive
+     */
+    default Mono<Void> onStop() {
+        return Mono.empty();
+    }
+
+    default Mono<Void> onChannelsChange() {
+        return Mono.empty();
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Applies a journal record written by this game, replaying a record twice must be harmless
+     */
+    default void replay(int type, DataInput in) throws IOException {}
+
+    /**
+     * Writes the records needed to rebuild the current state of this game
+     */
+    default void snapshot(GameInstance.RecordSink sink) throws IOException {}
+
+    /**
+     * Called once the game state was rebuilt from the journal after a restart
+     */
+    default Mono<Void> onRecover() {
+        return Mono.empty();
+    }
 }
@@ -0,0 +1,159 @@
+package com.billialpha.discord.gamebot.games;
+
+import discord4j.common.util.Snowflake;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of running game instances, indexed to dispatch events without scanning every game
+ */
+public class GameIndex {
+    private final Set<GameInstance> instances;
+    private final AtomicLong created;
+    private final AtomicLong reclaimed;
+    private final AtomicLong reclaimedRejected;
+    private final Map<Snowflake, Set<GameInstance>> activeByGuild;
+    private final Map<Snowflake, Set<GameInstance>> runningByGuild;
+    private final Map<Snowflake, Set<GameInstance>> byPlayer;
+    private final Map<Tuple2<Snowflake, Snowflake>, GameInstance> byMessage;
+
+    public GameIndex() {
+        this.instances = ConcurrentHashMap.newKeySet();
+        this.created = new AtomicLong();
+        this.reclaimed = new AtomicLong();
+        this.reclaimedRejected = new AtomicLong();
+        this.activeByGuild = new ConcurrentHashMap<>();
+        this.runningByGuild = new ConcurrentHashMap<>();
+        this.byPlayer = new ConcurrentHashMap<>();
+        this.byMessage = new ConcurrentHashMap<>();
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return All running (starting or active) instances
+     */
+    public Set<GameInstance> getInstances() {
+        return Collections.unmodifiableSet(instances);
+    }
+
+    /**
+     * @return The number of instances ever added
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return The number of instances removed once inactive
+     */
+    public long getReclaimedCount() {
+        return reclaimed.get();
+    }
+
+    /**
+     * @return The number of events ever dropped by the mailboxes of instances, including reclaimed ones
+     */
+    public long getRejectedCount() {
+        long rejected = reclaimedRejected.get();
+        for (GameInstance inst : instances) rejected += inst.getMailbox().getRejectedCount();
+        return rejected;
+    }
+
+    /**
+     * @return The active instances of a guild
+     */
+    public Set<GameInstance> getActive(Snowflake guildId) {
+        return activeByGuild.getOrDefault(guildId, Collections.emptySet());
+    }
+
+    /**
+     * @return The running (starting or active) instances of a guild
+     */
+    public Set<GameInstance> getRunning(Snowflake guildId) {
+        return runningByGuild.getOrDefault(guildId, Collections.emptySet());
+    }
+
+    /**
+     * @return The running (starting or active) instances a user is playing in
+     */
+    public Set<GameInstance> getByPlayer(Snowflake playerId) {
+        return byPlayer.getOrDefault(playerId, Collections.emptySet());
+    }
+
+    /**
+     * @return The running instance owning a message, or null
+     */
+    public GameInstance getByMessage(Snowflake channelId, Snowflake messageId) {
+        return byMessage.get(Tuples.of(channelId, messageId));
+    }
+
+    // --- Modifiers ---
+
+    /**
+     * Adds a new instance, it is removed as soon as it becomes inactive
+     */
+    public void add(GameInstance inst) {
+        if (instances.add(inst)) created.incrementAndGet();
+    }
+
+    void onStateChange(GameInstance inst, GameInstance.State from, GameInstance.State to) {
+        if (from == to) return;
+        if (to == GameInstance.State.ACTIVE) {
+            link(activeByGuild, inst.getGuildId(), inst);
+            // Concurrent transition happened meanwhile, undo
+            if (inst.getState() != GameInstance.State.ACTIVE) unlink(activeByGuild, inst.getGuildId(), inst);
+        } else if (from == GameInstance.State.ACTIVE) unlink(activeByGuild, inst.getGuildId(), inst);
+
+        if (to == GameInstance.State.INACTIVE) {
+            if (instances.remove(inst)) {
+                reclaimed.incrementAndGet();
+                reclaimedRejected.addAndGet(inst.getMailbox().getRejectedCount());
+            }
+            unlink(runningByGuild, inst.getGuildId(), inst);
+            for (Snowflake playerId : inst.getPlayers()) unlink(byPlayer, playerId, inst);
+            for (Tuple2<Snowflake, Snowflake> msg : inst.getMessages()) byMessage.remove(msg, inst);
+        } else if (from == GameInstance.State.INACTIVE) {
+            link(runningByGuild, inst.getGuildId(), inst);
+            for (Snowflake playerId : inst.getPlayers()) link(byPlayer, playerId, inst);
+            for (Tuple2<Snowflake, Snowflake> msg : inst.getMessages()) byMessage.put(msg, inst);
+        }
+    }
+
+    void onPlayerRegistered(GameInstance inst, Snowflake playerId) {
+        if (inst.getState() == GameInstance.State.INACTIVE) return;
+        link(byPlayer, playerId, inst);
+        if (inst.getState() == GameInstance.State.INACTIVE) unlink(byPlayer, playerId, inst);
+    }
+
+    void onMessageRegistered(GameInstance inst, Tuple2<Snowflake, Snowflake> msg) {
+        if (inst.getState() == GameInstance.State.INACTIVE) return;
+        byMessage.put(msg, inst);
+        if (inst.getState() == GameInstance.State.INACTIVE) byMessage.remove(msg, inst);
+    }
+
+    void onMessageUnregistered(GameInstance inst, Tuple2<Snowflake, Snowflake> msg) {
+        byMessage.remove(msg, inst);
+    }
+
+    private static void link(Map<Snowflake, Set<GameInstance>> map, Snowflake key, GameInstance inst) {
+        map.compute(key, (k, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(inst);
+            return set;
+        });
+    }
+
+    private static void unlink(Map<Snowflake, Set<GameInstance>> map, Snowflake key, GameInstance inst) {
+        map.computeIfPresent(key, (k, set) -> {
+            set.remove(inst);
+            return set.isEmpty() ? null : set;
+        });
+    }
+}
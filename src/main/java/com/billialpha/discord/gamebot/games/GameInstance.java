@@ -1,5 +1,11 @@
 package com.billialpha.discord.gamebot.games;
 
+import com.billialpha.discord.gamebot.GameBot;
+import com.billialpha.discord.gamebot.ShardRouter;
+import com.billialpha.discord.gamebot.TimerWheel;
+import com.billialpha.discord.gamebot.journal.Journal;
+import com.billialpha.discord.gamebot.metrics.BotMetrics;
+import com.billialpha.discord.gamebot.metrics.MetricRegistry;
 import discord4j.common.util.Snowflake;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.core.event.domain.message.MessageCreateEvent;
@@ -9,29 +15,68 @@ import discord4j.core.object.entity.channel.GuildMessageChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * A single game instance, bound to a guild
  */
 public class GameInstance {
     public static final Logger LOG = LoggerFactory.getLogger(GameInstance.class);
+    private static final int MAILBOX_CAPACITY = 1024;
+    // Journal record types
+    private static final int RECORD_CREATED = 1;
+    private static final int RECORD_STATE = 2;
+    private static final int RECORD_PLAYER = 3;
+    private static final int RECORD_MESSAGE = 4;
+    private static final int RECORD_MESSAGE_REMOVED = 5;
+
     public final GatewayDiscordClient client;
+    private final long id;
+    private final GameBot bot;
+    private final GameIndex index;
+    private final GameMailbox mailbox;
+    private final BotMetrics metrics;
     private final Snowflake guildId;
-    private final Set<Snowflake> players;
-    private State state;
+    private final PlayerSet players;
+    private final Set<Tuple2<Snowflake, Snowflake>> messages;
+    private final AtomicReference<State> state;
+    private volatile Instant lastActivity;
+    private volatile TimerWheel.Timeout deadline;
     private final String gameType;
+    private final String options;
     private final Game game;
 
-    public GameInstance(GatewayDiscordClient client, Snowflake guildId, GameSpec<?> specs) {
-        this.client = client;
+    public GameInstance(GameBot bot, Snowflake guildId, GameSpec<?> specs) {
+        this(bot, bot.nextGameId(), guildId, specs);
+    }
+
+    private GameInstance(GameBot bot, long id, Snowflake guildId, GameSpec<?> specs) {
+        this.client = bot.client;
+        this.id = id;
+        this.bot = bot;
+        ShardRouter.Shard shard = bot.getShards().getShard(guildId);
+        if (shard == null) throw new IllegalStateException("Guild not owned by this process: "+guildId.asString());
+        this.index = shard.getIndex();
+        this.mailbox = new GameMailbox(shard.getEventScheduler(), MAILBOX_CAPACITY);
+        this.metrics = bot.getMetrics();
         this.guildId = guildId;
-        this.players = new HashSet<>();
-        this.state = State.INACTIVE;
+        this.players = new PlayerSet();
+        this.messages = ConcurrentHashMap.newKeySet();
+        this.state = new AtomicReference<>(State.INACTIVE);
+        this.lastActivity = Instant.now();
         this.gameType = specs.getType().name;
+        this.options = specs.getOptions();
         this.game = specs.build(this);
     }
 
@@ -41,55 +86,354 @@ public class GameInstance {
         return client;
     }
 
+    public GameBot getBot() {
+        return bot;
+    }
+
+    /**
+     * @return The unique id of this game, used in the journal
+     */
+    public long getId() {
+        return id;
+    }
+
     public Snowflake getGuildId() {
         return guildId;
     }
 
-    public Set<Snowflake> getPlayers() {
-        return Collections.unmodifiableSet(players);
+    /**
+     * @return The name of the game type
+     */
+    public String getTypeName() {
+        return gameType;
+    }
+
+    /**
+     * @return The options given when starting the game, empty if none
+     */
+    public String getOptions() {
+        return options;
+    }
+
+    public GameMailbox getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * @return A read-only view of the players, including the host
+     */
+    public PlayerSet getPlayers() {
+        return players;
+    }
+
+    public Set<Tuple2<Snowflake, Snowflake>> getMessages() {
+        return Collections.unmodifiableSet(messages);
     }
 
     public State getState() {
-        return state;
+        return state.get();
+    }
+
+    public Instant getLastActivity() {
+        return lastActivity;
     }
 
     // --- Actions ---
 
     public Mono<Void> start(GuildMessageChannel chan, Member player) {
         LOG.info("Starting "+gameType);
-        this.state = State.STARTING;
-        return game.onStart(chan, player);
+        journal(RECORD_CREATED, out -> {
+            out.writeLong(guildId.asLong());
+            out.writeUTF(gameType);
+            out.writeUTF(options);
+        });
+        setState(State.STARTING);
+        return submitControl(metrics.onStartLatency, () -> game.onStart(chan, player));
+    }
+
+    /**
+     * Registers a player, caching how it is displayed
+     */
+    public void registerPlayer(Member player) {
+        if (state.get() == State.ACTIVE) throw new IllegalStateException("Cannot register players when game is active");
+        bot.getMemberCache().put(player);
+        registerPlayer(player.getId());
     }
 
     public void registerPlayer(Snowflake playerId) {
         if (client.getSelfId().equals(playerId)) return;
-        if (state == State.ACTIVE) throw new IllegalStateException("Cannot register players when game is active");
+        if (state.get() == State.ACTIVE) throw new IllegalStateException("Cannot register players when game is active");
         LOG.info("Registering player: "+playerId.asLong());
-        players.add(playerId);
+        if (players.add(playerId.asLong())) {
+            index.onPlayerRegistered(this, playerId);
+            journal(RECORD_PLAYER, out -> out.writeLong(playerId.asLong()));
+        }
+    }
+
+    /**
+     * Marks a message as owned by this game, so that reactions to it are routed here
+     */
+    public void registerMessage(Snowflake channelId, Snowflake messageId) {
+        Tuple2<Snowflake, Snowflake> msg = Tuples.of(channelId, messageId);
+        if (messages.add(msg)) {
+            index.onMessageRegistered(this, msg);
+            journal(RECORD_MESSAGE, out -> {
+                out.writeLong(channelId.asLong());
+                out.writeLong(messageId.asLong());
+            });
+        }
+    }
+
+    /**
+     * Releases a message of this game, reactions to it are no longer routed here
+     */
+    public void unregisterMessage(Snowflake channelId, Snowflake messageId) {
+        Tuple2<Snowflake, Snowflake> msg = Tuples.of(channelId, messageId);
+        if (messages.remove(msg)) {
+            index.onMessageUnregistered(this, msg);
+            journal(RECORD_MESSAGE_REMOVED, out -> {
+                out.writeLong(channelId.asLong());
+                out.writeLong(messageId.asLong());
+            });
+        }
+    }
+
+    /**
+     * Appends a record to the journal, it is given back to {@link Game#replay} after a restart
+     */
+    public void journal(int type, Journal.Payload payload) {
+        bot.getJournal().append(id, type, payload);
+    }
+
+    /**
+     * Records game activity, postponing idle expiry
+     */
+    public void touch() {
+        this.lastActivity = Instant.now();
+    }
+
+    /**
+     * Stops this game because it expired
+     */
+    public Mono<Void> expire() {
+        State current = state.get();
+        if (current == State.INACTIVE || !compareAndSetState(current, State.INACTIVE)) return Mono.empty();
+        LOG.info("Expiring "+gameType+" (g:"+guildId.asLong()+")");
+        return submitControl(metrics.onExpireLatency, game::onExpire);
+    }
+
+    /**
+     * Stops this game at the request of a guild manager
+     */
+    public Mono<Void> stop() {
+        State current = state.get();
+        if (current == State.INACTIVE || !compareAndSetState(current, State.INACTIVE)) return Mono.empty();
+        LOG.info("Stopping "+gameType+" (g:"+guildId.asLong()+")");
+        return submitControl(metrics.onStopLatency, game::onStop);
     }
 
     public void setActive() {
-        this.state = State.ACTIVE;
+        setState(State.ACTIVE);
     }
 
     public void setInactive() {
-        this.state = State.INACTIVE;
+        setState(State.INACTIVE);
+    }
+
+    /**
+     * Atomically moves this game from a state to another
+     * @return Whether the transition happened
+     */
+    public boolean compareAndSetState(State expected, State newState) {
+        if (!state.compareAndSet(expected, newState)) return false;
+        onStateChange(expected, newState);
+        return true;
     }
 
-    public Mono<Void> onGuildMessage(MessageCreateEvent evt) {
-        return game.onGuildMessage(evt);
+    private void setState(State newState) {
+        State previous = state.getAndSet(newState);
+        onStateChange(previous, newState);
     }
 
-    public Mono<Void> onDirectMessage(MessageCreateEvent evt) {
-        return game.onDirectMessage(evt);
+    private void onStateChange(State previous, State newState) {
+        index.onStateChange(this, previous, newState);
+        if (previous == newState) return;
+        journal(RECORD_STATE, out -> out.writeByte(newState.ordinal()));
+        // Arm the deadline of the new state: lobby or idle expiry
+        TimerWheel.Timeout current = deadline;
+        if (current != null) current.cancel();
+        if (newState == State.STARTING) deadline = bot.getTimers().schedule(bot.getLobbyTtl(), this::onDeadline);
+        else if (newState == State.ACTIVE) deadline = bot.getTimers().schedule(bot.getIdleTtl(), this::onDeadline);
+        else deadline = null;
+    }
+
+    private void onDeadline() {
+        if (state.get() == State.ACTIVE) {
+            // Activity happened since the deadline was set: wait for the remaining idle time
+            Duration remaining = Duration.between(Instant.now(), lastActivity.plus(bot.getIdleTtl()));
+            if (!remaining.isNegative() && !remaining.isZero()) {
+                deadline = bot.getTimers().schedule(remaining, this::onDeadline);
+                return;
+            }
+        }
+        expire().subscribe(null, err -> LOG.warn("Error while expiring game", err));
+    }
+
+    /**
+     * Runs a task in this game's mailbox, after the events already queued
+     * Games should use this for work triggered outside of event handlers, e.g. timeouts:
+     * like the lifecycle handlers, it is never dropped when the mailbox is full
+     */
+    public Mono<Void> submit(Supplier<Mono<Void>> task) {
+        return mailbox.submitControl(task);
+    }
+
+    /**
+     * Runs a game handler in the mailbox, recording the time until its result completes
+     * The handler is dropped if the mailbox is full
+     */
+    private Mono<Void> submit(MetricRegistry.Distribution latency, Supplier<Mono<Void>> handler) {
+        return mailbox.submit(timed(latency, handler));
+    }
+
+    /**
+     * Runs a lifecycle handler in the mailbox, even if it is full, recording the time until its result completes
+     */
+    private Mono<Void> submitControl(MetricRegistry.Distribution latency, Supplier<Mono<Void>> handler) {
+        return mailbox.submitControl(timed(latency, handler));
+    }
+
+    private static Supplier<Mono<Void>> timed(MetricRegistry.Distribution latency, Supplier<Mono<Void>> handler) {
+        return () -> {
+            long start = System.nanoTime();
+            return handler.get().doFinally(sig -> latency.record(System.nanoTime() - start));
+        };
+    }
+
+    /**
+     * @return Whether a message must reach the game even when events are shed
+     */
+    public boolean isEssential(MessageCreateEvent evt) {
+        return game.isEssential(evt);
+    }
+
+    /**
+     * @return Whether a reaction must reach the game even when events are shed
+     */
+    public boolean isEssential(ReactionAddEvent evt) {
+        return game.isEssential(evt);
+    }
+
+    public Mono<Void> onGuildMessage(MessageCreateEvent evt, long receivedAt) {
+        return submit(metrics.onGuildMessageLatency, () -> game.onGuildMessage(evt, receivedAt));
+    }
+
+    public Mono<Void> onDirectMessage(MessageCreateEvent evt, long receivedAt) {
+        touch();
+        return submit(metrics.onDirectMessageLatency, () -> game.onDirectMessage(evt, receivedAt));
+    }
+
+    public Mono<Void> onCommand(MessageCreateEvent evt, String args) {
+        touch();
+        return submit(metrics.onCommandLatency, () -> game.onCommand(evt, args));
     }
 
     public Mono<Void> onReaction(ReactionAddEvent evt) {
-        return game.onReaction(evt);
+        touch();
+        return submit(metrics.onReactionLatency, () -> game.onReaction(evt));
+    }
+
+    /**
+     * Notifies the game that channels of its guild were created, deleted or updated
+     */
+    public Mono<Void> onChannelsChange() {
+        return submit(metrics.onChannelsChangeLatency, game::onChannelsChange);
+    }
+
+    // --- Persistence ---
+
+    /**
+     * Rebuilds a game from its creation record
+     * @return The game, or null if its type is no longer registered
+     */
+    public static GameInstance replay(GameBot bot, long id, int type, DataInput in) throws IOException {
+        if (type != RECORD_CREATED) return null;
+        Snowflake guildId = Snowflake.of(in.readLong());
+        String typeName = in.readUTF();
+        String options = in.readUTF();
+        if (!bot.getShards().isLocal(guildId)) {
+            LOG.info("Not restoring game of a guild owned by another process: "+guildId.asString());
+            return null;
+        }
+        GameRegistry.GameType<?> gameType = GameRegistry.get().get(typeName);
+        if (gameType == null) {
+            LOG.warn("Cannot restore game of unknown type: "+typeName);
+            return null;
+        }
+        return new GameInstance(bot, id, guildId, GameSpec.of(gameType, options));
+    }
+
+    /**
+     * Applies a journal record, without side effects until {@link #recover()}
+     */
+    public void replay(int type, DataInput in) throws IOException {
+        switch (type) {
+            case RECORD_CREATED: break; // Duplicate from a snapshot
+            case RECORD_STATE: state.set(State.values()[in.readByte()]); break;
+            case RECORD_PLAYER: players.add(in.readLong()); break;
+            case RECORD_MESSAGE: messages.add(Tuples.of(Snowflake.of(in.readLong()), Snowflake.of(in.readLong()))); break;
+            case RECORD_MESSAGE_REMOVED:
+                messages.remove(Tuples.of(Snowflake.of(in.readLong()), Snowflake.of(in.readLong())));
+                break;
+            default:
+                if (type < Game.FIRST_RECORD_TYPE) throw new IOException("Unknown record type: "+type);
+                game.replay(type, in);
+        }
+    }
+
+    /**
+     * Writes the records needed to rebuild this game
+     */
+    public void snapshot(Journal.Sink sink) throws IOException {
+        sink.append(id, RECORD_CREATED, out -> {
+            out.writeLong(guildId.asLong());
+            out.writeUTF(gameType);
+            out.writeUTF(options);
+        });
+        for (Snowflake playerId : players)
+            sink.append(id, RECORD_PLAYER, out -> out.writeLong(playerId.asLong()));
+        for (Tuple2<Snowflake, Snowflake> msg : messages)
+            sink.append(id, RECORD_MESSAGE, out -> {
+                out.writeLong(msg.getT1().asLong());
+                out.writeLong(msg.getT2().asLong());
+            });
+        game.snapshot((type, payload) -> sink.append(id, type, payload));
+        State current = state.get();
+        sink.append(id, RECORD_STATE, out -> out.writeByte(current.ordinal()));
+    }
+
+    /**
+     * Resumes a replayed game: indexes it, arms its deadlines and lets the game recover
+     */
+    public Mono<Void> recover() {
+        State replayed = state.getAndSet(State.INACTIVE);
+        if (replayed == State.INACTIVE) return Mono.empty();
+        LOG.info("Recovering "+gameType+" (g:"+guildId.asLong()+")");
+        index.add(this);
+        setState(replayed);
+        return submitControl(metrics.onRecoverLatency, game::onRecover);
     }
 
     // --- Subclasses ---
 
+    /**
+     * Receives the journal records of a game
+     */
+    @FunctionalInterface
+    public interface RecordSink {
+        void append(int type, Journal.Payload payload) throws IOException;
+    }
+
     public enum State {
         INACTIVE,
         STARTING,
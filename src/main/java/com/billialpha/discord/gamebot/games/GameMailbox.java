@@ -0,0 +1,142 @@
+package com.billialpha.discord.gamebot.games;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded mailbox, running the event handlers of a game one at a time
+ *
+ * Handlers of a single game never run concurrently, while the mailboxes of
+ * different games are drained in parallel on a shared scheduler. Only event handlers
+ * are dropped when the mailbox is full: control tasks, such as stopping the game, are
+ * queued past its capacity so the game can always end.
+ */
+public class GameMailbox {
+    public static final Logger LOG = LoggerFactory.getLogger(GameMailbox.class);
+    private static final int BATCH_SIZE = 32; // Handlers run before yielding to other games
+
+    private final Scheduler scheduler;
+    private final int capacity;
+    private final Queue<Runnable> queue;
+    private final AtomicInteger depth;
+    private final AtomicInteger wip;
+    private final AtomicInteger maxDepth;
+    private final AtomicLong processed;
+    private final AtomicLong rejected;
+
+    public GameMailbox(Scheduler scheduler, int capacity) {
+        this.scheduler = scheduler;
+        this.capacity = capacity;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.depth = new AtomicInteger();
+        this.wip = new AtomicInteger();
+        this.maxDepth = new AtomicInteger();
+        this.processed = new AtomicLong();
+        this.rejected = new AtomicLong();
+    }
+
+    // --- Getters ---
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // --- Actions ---
+
+    /**
+     * Queues a handler, it is invoked after every handler queued before it
+     * @return A mono completing when the handler's result completes, or right away if the mailbox is full
+     */
+    public Mono<Void> submit(Supplier<Mono<Void>> handler) {
+        return submit(handler, false);
+    }
+
+    /**
+     * Queues a control task, invoked after every handler queued before it even if the mailbox is full
+     * @return A mono completing when the task's result completes
+     */
+    public Mono<Void> submitControl(Supplier<Mono<Void>> task) {
+        return submit(task, true);
+    }
+
+    private Mono<Void> submit(Supplier<Mono<Void>> handler, boolean control) {
+        return Mono.create(sink -> {
+            Runnable task = () -> {
+                Mono<Void> result;
+                try {
+                    result = handler.get();
+                } catch (Throwable t) {
+                    sink.error(t);
+                    return;
+                }
+                result.subscribe(null, sink::error, sink::success);
+            };
+            int queued = control ? depth.incrementAndGet() : reserve();
+            if (queued < 0) {
+                rejected.incrementAndGet();
+                LOG.warn("Mailbox full, dropping event");
+                sink.success();
+                return;
+            }
+            queue.offer(task);
+            maxDepth.accumulateAndGet(queued, Math::max);
+            if (wip.getAndIncrement() == 0) scheduler.schedule(this::drain);
+        });
+    }
+
+    /**
+     * Takes a place in the mailbox for an event handler
+     * @return The depth of the mailbox with the handler, -1 if it is full
+     */
+    private int reserve() {
+        for (;;) {
+            int current = depth.get();
+            if (current >= capacity) return -1;
+            if (depth.compareAndSet(current, current + 1)) return current + 1;
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        for (;;) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = queue.poll();
+                if (task == null) break;
+                depth.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    LOG.error("Error in game handler", t);
+                }
+                processed.incrementAndGet();
+            }
+            if (!queue.isEmpty()) {
+                // Yield, keeping the work-in-progress count so that nobody else schedules a drain
+                scheduler.schedule(this::drain);
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) break;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.billialpha.discord.gamebot.games;
 
+import discord4j.gateway.intent.Intent;
+import discord4j.gateway.intent.IntentSet;
+
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -25,6 +30,22 @@ public class GameRegistry {
         return types.get(type);
     }
 
+    /**
+     * @return All registered game types
+     */
+    public Collection<GameType<?>> getTypes() {
+        return Collections.unmodifiableCollection(types.values());
+    }
+
+    /**
+     * @return The gateway intents needed by all registered game types
+     */
+    public IntentSet getIntents() {
+        IntentSet intents = IntentSet.none();
+        for (GameType<?> type : types.values()) intents = intents.or(type.intents);
+        return intents;
+    }
+
     // --- Modifiers ---
 
     public void clear() {
@@ -40,6 +61,10 @@ public class GameRegistry {
         register(new GameType<>(name, instanceBuilder));
     }
 
+    public void register(String name, IntentSet intents, Function<GameInstance, Game> instanceBuilder) {
+        register(new GameType<>(name, intents, instanceBuilder));
+    }
+
     // --- Subclasses ---
 
     /**
@@ -48,10 +73,19 @@ public class GameRegistry {
      */
     public static class GameType<T extends Game> {
         public final String name;
+        public final IntentSet intents;
         private final Function<GameInstance, T> instanceBuilder;
 
         public GameType(String name, Function<GameInstance, T> instanceBuilder) {
+            this(name, IntentSet.none(), instanceBuilder);
+        }
+
+        /**
+         * @param intents The gateway events the game handles, on top of the guild messages the bot always receives
+         */
+        public GameType(String name, IntentSet intents, Function<GameInstance, T> instanceBuilder) {
             this.name = name;
+            this.intents = intents;
             this.instanceBuilder = instanceBuilder;
         }
 
@@ -59,6 +93,17 @@ public class GameRegistry {
             return name;
         }
 
+        public IntentSet getIntents() {
+            return intents;
+        }
+
+        /**
+         * @return Whether the game is driven by direct messages, only received by the process running shard 0
+         */
+        public boolean needsDirectMessages() {
+            return intents.contains(Intent.DIRECT_MESSAGES);
+        }
+
         public T newInstance(GameInstance instance) {
             return instanceBuilder.apply(instance);
         }
@@ -7,24 +7,42 @@ import java.util.Objects;
  */
 public class GameSpec<T extends Game> {
     private final GameRegistry.GameType<T> gameType;
+    private final String options;
 
     public static <T extends Game> GameSpec<T> of(GameRegistry.GameType<T> gameType) {
+        return of(gameType, "");
+    }
+
+    public static <T extends Game> GameSpec<T> of(GameRegistry.GameType<T> gameType, String options) {
         Objects.requireNonNull(gameType, "Game type cannot be null");
-        return new GameSpec<>(gameType);
+        Objects.requireNonNull(options, "Game options cannot be null");
+        return new GameSpec<>(gameType, options);
     }
 
     public static GameSpec<?> of(String gameType) {
         return of(GameRegistry.get().get(gameType));
     }
 
-    private GameSpec(GameRegistry.GameType<T> gameType) {
+    public static GameSpec<?> of(String gameType, String options) {
+        return of(GameRegistry.get().get(gameType), options);
+    }
+
+    private GameSpec(GameRegistry.GameType<T> gameType, String options) {
         this.gameType = gameType;
+        this.options = options;
     }
 
     public GameRegistry.GameType<T> getType() {
         return gameType;
     }
 
+    /**
+     * @return The free-form options given when starting the game, empty if none
+     */
+    public String getOptions() {
+        return options;
+    }
+
     public T build(GameInstance instance) {
         return gameType.newInstance(instance);
     }
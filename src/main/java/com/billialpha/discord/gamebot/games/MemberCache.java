@@ -0,0 +1,65 @@
+package com.billialpha.discord.gamebot.games;
+
+import com.billialpha.discord.gamebot.GuildCache;
+import discord4j.common.util.Snowflake;
+import discord4j.core.object.entity.Member;
+
+import java.time.Duration;
+
+/**
+ * Per-guild cache of how players are displayed, filled when they register in a game
+ *
+ * Each guild keeps a bounded number of members, entries expire after a fixed time
+ * and are invalidated when the member is updated or leaves.
+ */
+public class MemberCache {
+    private final GuildCache<String> names;
+
+    public MemberCache(int maxSizePerGuild, Duration ttl) {
+        this.names = new GuildCache<>(maxSizePerGuild, ttl);
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The mention of a member, it only depends on the user id so it is never fetched
+     */
+    public String getMention(Snowflake userId) {
+        return "<@!"+userId.asString()+">";
+    }
+
+    /**
+     * @return The cached display name of a member, or its mention if unknown
+     */
+    public String getDisplayName(Snowflake guildId, Snowflake userId) {
+        String name = names.get(guildId, userId);
+        return name != null ? name : getMention(userId);
+    }
+
+    // --- Modifiers ---
+
+    public void put(Member member) {
+        names.put(member.getGuildId(), member.getId(), escape(member.getDisplayName()));
+    }
+
+    public void invalidate(Snowflake guildId, Snowflake userId) {
+        names.invalidate(guildId, userId);
+    }
+
+    public void invalidateGuild(Snowflake guildId) {
+        names.invalidateGuild(guildId);
+    }
+
+    /**
+     * Escapes the markdown characters of a name, so it is displayed as typed
+     */
+    private static String escape(String name) {
+        StringBuilder escaped = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '*' || c == '_' || c == '~' || c == '`' || c == '|' || c == '\\') escaped.append('\\');
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.billialpha.discord.gamebot.games;
+
+import discord4j.common.util.Snowflake;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * The players of a game, stored as raw snowflakes in an open-addressing table
+ *
+ * Players only join, so reads never lock: lookups and iteration go through the current table,
+ * which is only replaced by a larger copy. Writers are serialized, they normally run in the game mailbox.
+ * As a {@link java.util.Set} it is a read-only view, iterating without copying.
+ */
+public class PlayerSet extends AbstractSet<Snowflake> {
+    private static final long EMPTY = 0; // Never a valid snowflake
+    private volatile AtomicLongArray table;
+    private volatile int size;
+
+    public PlayerSet() {
+        this.table = new AtomicLongArray(16);
+    }
+
+    // --- Getters ---
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long playerId) {
+        AtomicLongArray tab = table;
+        int mask = tab.length() - 1;
+        for (int i = hash(playerId) & mask; ; i = (i + 1) & mask) {
+            long id = tab.get(i);
+            if (id == playerId) return true;
+            if (id == EMPTY) return false;
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Snowflake && contains(((Snowflake) o).asLong());
+    }
+
+    /**
+     * Calls an action with each player id, without allocating
+     */
+    public void forEachId(LongConsumer action) {
+        AtomicLongArray tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            long id = tab.get(i);
+            if (id != EMPTY) action.accept(id);
+        }
+    }
+
+    @Override
+    public Iterator<Snowflake> iterator() {
+        AtomicLongArray tab = table;
+        return new Iterator<>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < tab.length() && tab.get(from) == EMPTY) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < tab.length();
+            }
+
+            @Override
+            public Snowflake next() {
+                if (next >= tab.length()) throw new NoSuchElementException();
+                Snowflake id = Snowflake.of(tab.get(next));
+                next = advance(next + 1);
+                return id;
+            }
+        };
+    }
+
+    // --- Modifiers ---
+
+    /**
+     * Adds a player, only called by {@link GameInstance}
+     * @return Whether the player was not in the set
+     */
+    synchronized boolean add(long playerId) {
+        if (playerId == EMPTY) throw new IllegalArgumentException("Invalid player id");
+        if (contains(playerId)) return false;
+        if ((size + 1) * 2 > table.length()) table = grow(table); // Load factor of 1/2
+        insert(table, playerId);
+        size++;
+        return true;
+    }
+
+    private static AtomicLongArray grow(AtomicLongArray tab) {
+        AtomicLongArray bigger = new AtomicLongArray(tab.length() * 2);
+        for (int i = 0; i < tab.length(); i++) {
+            long id = tab.get(i);
+            if (id != EMPTY) insert(bigger, id);
+        }
+        return bigger;
+    }
+
+    private static void insert(AtomicLongArray tab, long playerId) {
+        int mask = tab.length() - 1;
+        int i = hash(playerId) & mask;
+        while (tab.get(i) != EMPTY) i = (i + 1) & mask;
+        tab.set(i, playerId);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L; // Snowflake low bits are mostly worker and sequence ids
+        return (int) (h ^ (h >>> 32));
+    }
+}
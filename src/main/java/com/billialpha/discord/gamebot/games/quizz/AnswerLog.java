@@ -0,0 +1,219 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import discord4j.common.util.Snowflake;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Log of the answers of a round, ordered by the time players sent them
+ *
+ * Answers are stored in parallel arrays (player id, send time, receive time since the round start,
+ * text, grade) with an open-addressing index by player. Appends are serialized, readers never lock:
+ * they only see the answers counted when they started. Answers almost always arrive in order and
+ * are appended in place, an answer overtaken by a later one is inserted in a copy of the arrays.
+ * {@link QuizzRound.Answer} objects are only created when reading.
+ */
+class AnswerLog {
+    private static final int INITIAL_CAPACITY = 16;
+    private final AnswerMatcher matcher;
+    private volatile Store store;
+    private volatile int size;
+    private volatile Instant startTime;
+    private volatile long startNanos;
+
+    /**
+     * @param matcher Grades the answers, or null if the round has no expected answer
+     */
+    AnswerLog(AnswerMatcher matcher) {
+        this.matcher = matcher;
+        this.store = new Store(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Sets the start of the round, answer times are stored relative to it
+     */
+    void setStart(Instant startTime, long startNanos) {
+        this.startTime = startTime;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Adds the first answer of a player, ordered by send time then by receive time
+     * @param sentAt When the player sent the answer, in epoch milliseconds (Discord time)
+     * @param receivedAt When the answer was received, by {@link System#nanoTime()}
+     * @return The new answer, or null if the player already answered
+     */
+    QuizzRound.Answer append(Snowflake player, String msg, long sentAt, long receivedAt) {
+        return add(player, msg, sentAt, receivedAt - startNanos);
+    }
+
+    /**
+     * Adds the first answer of a player, with a receive time relative to the round start
+     * @return The new answer, or null if the player already answered
+     */
+    QuizzRound.Answer replay(Snowflake player, String msg, long sentAt, long offsetNanos) {
+        return add(player, msg, sentAt, offsetNanos);
+    }
+
+    private QuizzRound.Answer add(Snowflake player, String msg, long sentAt, long offsetNanos) {
+        long playerId = player.asLong();
+        if (indexOf(playerId) >= 0) return null;
+        boolean correct = matcher != null && matcher.matches(msg); // Graded outside of the lock
+        synchronized (this) {
+            int n = size;
+            Store s = store;
+            if (s.find(playerId, n) >= 0) return null; // Answered concurrently
+            int position = n;
+            while (position > 0 && s.sentAt[position - 1] > sentAt) position--;
+            if (position == n) { // In order: append in place, beyond what readers see
+                if (n == s.players.length) store = s = s.copy(s.players.length * 2, n, -1);
+                s.set(n, playerId, sentAt, offsetNanos, msg, correct);
+                s.index(playerId, n);
+            } else { // Overtaken: readers keep the previous arrays
+                s = s.copy(n == s.players.length ? s.players.length * 2 : s.players.length, n, position);
+                s.set(position, playerId, sentAt, offsetNanos, msg, correct);
+                s.reindex(n + 1);
+                store = s;
+            }
+            size = n + 1; // Publishes the answer
+            return answerAt(s, position);
+        }
+    }
+
+    // --- Getters ---
+
+    boolean contains(long playerId) {
+        return indexOf(playerId) >= 0;
+    }
+
+    QuizzRound.Answer get(Snowflake player) {
+        int position = indexOf(player.asLong());
+        return position >= 0 ? answerAt(store, position) : null;
+    }
+
+    /**
+     * @return The answers, in answer order
+     */
+    Iterable<QuizzRound.Answer> ordered() {
+        return () -> {
+            int n = size;
+            Store s = store;
+            return new Iterator<>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < n;
+                }
+
+                @Override
+                public QuizzRound.Answer next() {
+                    if (next >= n) throw new NoSuchElementException();
+                    return answerAt(s, next++);
+                }
+            };
+        };
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int indexOf(long playerId) {
+        int n = size;
+        return store.find(playerId, n);
+    }
+
+    private QuizzRound.Answer answerAt(Store s, int position) {
+        return new QuizzRound.Answer(Snowflake.of(s.players[position]), Instant.ofEpochMilli(s.sentAt[position]),
+                startTime.plusNanos(s.offsets[position]), s.offsets[position], s.texts[position],
+                position + 1, s.correct[position]);
+    }
+
+    // --- Subclasses ---
+
+    /**
+     * The arrays of the log, replaced by a copy when full or when an answer is inserted
+     */
+    private static class Store {
+        final long[] players;
+        final long[] sentAt;
+        final long[] offsets;
+        final String[] texts;
+        final boolean[] correct;
+        final int[] slots; // Position + 1 of the answer of each hashed player id, 0 if empty
+
+        Store(int capacity) {
+            this.players = new long[capacity];
+            this.sentAt = new long[capacity];
+            this.offsets = new long[capacity];
+            this.texts = new String[capacity];
+            this.correct = new boolean[capacity];
+            this.slots = new int[capacity * 2];
+        }
+
+        /**
+         * Copies the first answers in new arrays
+         * @param gap A position left free for an inserted answer, or -1
+         */
+        Store copy(int capacity, int size, int gap) {
+            Store copy = new Store(capacity);
+            int split = gap < 0 ? size : gap;
+            int shift = gap < 0 ? 0 : 1;
+            System.arraycopy(players, 0, copy.players, 0, split);
+            System.arraycopy(players, split, copy.players, split + shift, size - split);
+            System.arraycopy(sentAt, 0, copy.sentAt, 0, split);
+            System.arraycopy(sentAt, split, copy.sentAt, split + shift, size - split);
+            System.arraycopy(offsets, 0, copy.offsets, 0, split);
+            System.arraycopy(offsets, split, copy.offsets, split + shift, size - split);
+            System.arraycopy(texts, 0, copy.texts, 0, split);
+            System.arraycopy(texts, split, copy.texts, split + shift, size - split);
+            System.arraycopy(correct, 0, copy.correct, 0, split);
+            System.arraycopy(correct, split, copy.correct, split + shift, size - split);
+            if (gap < 0) copy.reindex(size);
+            return copy;
+        }
+
+        void set(int position, long playerId, long sentAt, long offset, String text, boolean correct) {
+            this.players[position] = playerId;
+            this.sentAt[position] = sentAt;
+            this.offsets[position] = offset;
+            this.texts[position] = text;
+            this.correct[position] = correct;
+        }
+
+        void reindex(int size) {
+            Arrays.fill(slots, 0);
+            for (int i = 0; i < size; i++) index(players[i], i);
+        }
+
+        void index(long playerId, int position) {
+            int mask = slots.length - 1;
+            int i = hash(playerId) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = position + 1;
+        }
+
+        /**
+         * @param size The number of published answers, later ones are ignored
+         * @return The position of the answer of a player, or -1
+         */
+        int find(long playerId, int size) {
+            int mask = slots.length - 1;
+            for (int i = hash(playerId) & mask; ; i = (i + 1) & mask) {
+                int slot = slots[i];
+                if (slot == 0) return -1;
+                if (slot <= size && players[slot - 1] == playerId) return slot - 1;
+            }
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
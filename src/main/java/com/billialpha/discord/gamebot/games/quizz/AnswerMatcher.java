@@ -0,0 +1,143 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Grades answers against the expected answers of a round
+ *
+ * Answers are compared ignoring case, accents, punctuation, spacing and a leading article,
+ * with a few typos allowed on longer answers. Expected answers are normalized once,
+ * each answer is normalized in a single array and compared within a bounded edit distance.
+ */
+class AnswerMatcher {
+    private static final char[] FOLD = buildFoldTable();
+    private static final String[] ARTICLES = { "le ", "la ", "les ", "l ", "un ", "une ", "des ", "du ", "the ", "a " };
+
+    private final List<String> expected;
+    private final char[][] keys;
+
+    AnswerMatcher(List<String> expected) {
+        this.expected = Collections.unmodifiableList(new ArrayList<>(expected));
+        this.keys = new char[expected.size()][];
+        for (int i = 0; i < keys.length; i++) keys[i] = normalize(expected.get(i));
+    }
+
+    List<String> getExpected() {
+        return expected;
+    }
+
+    boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * @return Whether an answer matches one of the expected answers
+     */
+    boolean matches(String answer) {
+        char[] key = normalize(answer);
+        for (char[] exp : keys) {
+            if (withinDistance(key, exp, maxDistance(exp.length))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of typos allowed for an expected answer of a given length
+     */
+    static int maxDistance(int length) {
+        if (length <= 3) return 0;
+        if (length <= 7) return 1;
+        return 2;
+    }
+
+    /**
+     * Folds case and accents, and replaces runs of other characters by a single space
+     * @return The normalized characters, without a leading article
+     */
+    static char[] normalize(String str) {
+        char[] out = new char[str.length() * 2]; // Ligatures expand to two letters
+        int len = 0;
+        boolean space = false;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            char f = c < FOLD.length ? FOLD[c] : Character.toLowerCase(c);
+            if (f == 'œ' || f == 'æ') {
+                if (space && len > 0) out[len++] = ' ';
+                space = false;
+                out[len++] = f == 'œ' ? 'o' : 'a';
+                out[len++] = 'e';
+            } else if (Character.isLetterOrDigit(f)) {
+                if (space && len > 0) out[len++] = ' ';
+                space = false;
+                out[len++] = f;
+            } else {
+                space = true;
+            }
+        }
+        int start = 0;
+        for (String article : ARTICLES) {
+            if (len > article.length() && startsWith(out, len, article)) {
+                start = article.length();
+                break;
+            }
+        }
+        char[] key = new char[len - start];
+        System.arraycopy(out, start, key, 0, key.length);
+        return key;
+    }
+
+    private static boolean startsWith(char[] chars, int len, String prefix) {
+        if (len < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Levenshtein distance limited to a diagonal band, giving up as soon as it exceeds the limit
+     */
+    static boolean withinDistance(char[] a, char[] b, int max) {
+        if (Math.abs(a.length - b.length) > max) return false;
+        if (max == 0) return Arrays.equals(a, b);
+        int[] prev = new int[b.length + 1];
+        int[] cur = new int[b.length + 1];
+        for (int j = 0; j <= b.length; j++) prev[j] = j;
+        for (int i = 1; i <= a.length; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length, i + max);
+            cur[0] = i;
+            if (from > 1) cur[from - 1] = max + 1; // Outside the band
+            int rowMin = cur[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+                int d = Math.min(prev[j - 1] + cost, Math.min(prev[j], cur[j - 1]) + 1);
+                cur[j] = d;
+                if (d < rowMin) rowMin = d;
+            }
+            if (to < b.length) cur[to + 1] = max + 1;
+            if (rowMin > max) return false;
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[b.length] <= max;
+    }
+
+    /**
+     * @return The lower case letter without accent of each Latin-1 and Latin Extended-A character
+     */
+    private static char[] buildFoldTable() {
+        char[] table = new char[0x180];
+        for (char c = 0; c < table.length; c++) {
+            char lower = Character.toLowerCase(c);
+            String base = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+            table[c] = base.isEmpty() ? lower : base.charAt(0);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,87 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Keeps the embed of a round up to date with at most one edit in flight
+ *
+ * Updates requested while an edit is running are collapsed into a single
+ * edit, rendering the latest state once the running one completes.
+ * @param <M> The type of the message
+ */
+class EmbedUpdater<M> {
+    public static final Logger LOG = LoggerFactory.getLogger(EmbedUpdater.class);
+    private final Function<M, Mono<M>> edit;
+    private final AtomicInteger wip;
+    private final Queue<MonoSink<M>> flushSinks; // Flushes waiting for an edit to start
+    private volatile M message;
+    private volatile boolean dirty;
+
+    EmbedUpdater(Function<M, Mono<M>> edit) {
+        this.edit = edit;
+        this.wip = new AtomicInteger();
+        this.flushSinks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Sets the message to edit, applying the updates requested until now
+     */
+    void setMessage(M message) {
+        this.message = message;
+        if (dirty) request();
+    }
+
+    /**
+     * Requests an update of the message, it is applied asynchronously
+     */
+    void request() {
+        dirty = true;
+        if (message == null) return; // Applied once the message is set
+        if (wip.getAndIncrement() == 0) drain();
+    }
+
+    /**
+     * Requests a final update of the message
+     * @return A mono emitting the message once an edit started after this call completed,
+     * or completing empty right away if the message was never created
+     */
+    Mono<M> flush() {
+        return Mono.create(sink -> {
+            if (message == null) {
+                sink.success();
+                return;
+            }
+            flushSinks.add(sink);
+            request(); // Drains again if a running drain took the flushes before this one
+        });
+    }
+
+    private void drain() {
+        int missed = wip.get();
+        // Signalled by this edit, later flushes wait for the next one
+        MonoSink<M> first = flushSinks.poll();
+        List<MonoSink<M>> waiting = first == null ? List.of() : new ArrayList<>(List.of(first));
+        for (MonoSink<M> sink; (sink = flushSinks.poll()) != null; ) waiting.add(sink);
+        dirty = false;
+        M msg = message;
+        edit.apply(msg)
+                .onErrorResume(err -> {
+                    LOG.warn("Failed to update round message", err);
+                    return Mono.empty();
+                })
+                .subscribe(null, null, () -> {
+                    for (MonoSink<M> sink : waiting) sink.success(msg);
+                    if (wip.addAndGet(-missed) != 0) drain();
+                });
+    }
+}
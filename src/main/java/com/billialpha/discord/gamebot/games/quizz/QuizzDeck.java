@@ -0,0 +1,181 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of questions uploaded at once by the host, asked back-to-back
+ *
+ * Text decks hold one question per block of lines, blocks are separated by blank lines: the first line
+ * is the question, lines starting with '=' are expected answers and the others describe the question.
+ * JSON decks are an array of {@code {"question": "...", "description": "...", "answers": ["..."]}}.
+ * Both are parsed in a single pass over the stream.
+ */
+class QuizzDeck {
+    static final int MAX_SIZE = 256 * 1024; // Bytes of an uploaded deck
+    static final int MAX_QUESTIONS = 500;
+    private static final int TITLE_MAX_LENGTH = 256; // Discord limit of an embed title
+    private static final int DESC_MAX_LENGTH = 2048; // Discord limit of an embed description
+    private static final int ANSWER_MAX_LENGTH = 256;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final List<Question> questions;
+
+    QuizzDeck(List<Question> questions) {
+        this.questions = Collections.unmodifiableList(questions);
+    }
+
+    List<Question> getQuestions() {
+        return questions;
+    }
+
+    int size() {
+        return questions.size();
+    }
+
+    Question get(int position) {
+        return questions.get(position);
+    }
+
+    /**
+     * Journals the deck, the lengths checked by {@link #parse} keep each string within
+     * the 65535 bytes of {@link DataOutput#writeUTF}
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(questions.size());
+        for (Question q : questions) {
+            out.writeUTF(q.title);
+            out.writeBoolean(q.desc != null);
+            if (q.desc != null) out.writeUTF(q.desc);
+            out.writeInt(q.expected.size());
+            for (String exp : q.expected) out.writeUTF(exp);
+        }
+    }
+
+    static QuizzDeck read(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<Question> questions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String title = in.readUTF();
+            String desc = in.readBoolean() ? in.readUTF() : null;
+            int count = in.readInt();
+            List<String> expected = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) expected.add(in.readUTF());
+            questions.add(new Question(title, desc, expected));
+        }
+        return new QuizzDeck(questions);
+    }
+
+    /**
+     * @param filename The name of the uploaded file, JSON decks end with {@code .json}
+     */
+    static QuizzDeck parse(String filename, InputStream in) throws IOException {
+        List<Question> questions = filename.toLowerCase().endsWith(".json") ? parseJson(in) : parseText(in);
+        if (questions.isEmpty()) throw new IOException("Deck has no question");
+        return new QuizzDeck(questions);
+    }
+
+    private static List<Question> parseText(InputStream in) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String title = null;
+        StringBuilder desc = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty()) { // End of question
+                if (title != null) add(questions, title, desc.toString(), expected);
+                title = null;
+                desc.setLength(0);
+                expected = new ArrayList<>();
+            } else if (title == null) {
+                title = line;
+            } else if (line.startsWith("=")) {
+                if (line.length() > 1) expected.add(line.substring(1).trim());
+            } else {
+                if (desc.length() > 0) desc.append('\n');
+                desc.append(line);
+            }
+        }
+        if (title != null) add(questions, title, desc.toString(), expected);
+        return questions;
+    }
+
+    private static List<Question> parseJson(InputStream in) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) throw new IOException("Deck must be an array");
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                String title = null;
+                String desc = "";
+                List<String> expected = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (field.equals("question") && value == JsonToken.VALUE_STRING) {
+                        title = parser.getText().strip();
+                    } else if (field.equals("description") && value == JsonToken.VALUE_STRING) {
+                        desc = parser.getText().strip();
+                    } else if (field.equals("answers") && value == JsonToken.START_ARRAY) {
+                        JsonToken answer;
+                        while ((answer = parser.nextToken()) == JsonToken.VALUE_STRING) {
+                            String text = parser.getText().trim();
+                            if (!text.isEmpty()) expected.add(text);
+                        }
+                        if (answer != JsonToken.END_ARRAY)
+                            throw new IOException("Answers of question "+(questions.size()+1)+" must be strings");
+                    } else {
+                        parser.skipChildren(); // Unknown field
+                    }
+                }
+                if (title == null || title.isEmpty()) throw new IOException("Question "+(questions.size()+1)+" has no text");
+                add(questions, title, desc, expected);
+            }
+            if (token != JsonToken.END_ARRAY) throw new IOException("Deck must be an array of questions");
+        }
+        return questions;
+    }
+
+    private static void add(List<Question> questions, String title, String desc, List<String> expected)
+            throws IOException {
+        if (questions.size() >= MAX_QUESTIONS) throw new IOException("Deck has more than "+MAX_QUESTIONS+" questions");
+        int number = questions.size() + 1;
+        if (title.length() > TITLE_MAX_LENGTH)
+            throw new IOException("Question "+number+" is longer than "+TITLE_MAX_LENGTH+" characters");
+        if (desc.length() > DESC_MAX_LENGTH)
+            throw new IOException("Description of question "+number+" is longer than "+DESC_MAX_LENGTH+" characters");
+        for (String answer : expected) {
+            if (answer.length() > ANSWER_MAX_LENGTH)
+                throw new IOException("Answer of question "+number+" is longer than "+ANSWER_MAX_LENGTH+" characters");
+        }
+        questions.add(new Question(title, desc.isEmpty() ? null : desc, expected));
+    }
+
+    // --- Subclasses ---
+
+    static class Question {
+        final String title;
+        final String desc; // Null if none
+        final List<String> expected;
+
+        Question(String title, String desc, List<String> expected) {
+            this.title = title;
+            this.desc = desc;
+            this.expected = Collections.unmodifiableList(expected);
+        }
+    }
+}
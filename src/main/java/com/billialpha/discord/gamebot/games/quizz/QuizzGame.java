@@ -1,29 +1,36 @@
 package com.billialpha.discord.gamebot.games.quizz;
 
+import com.billialpha.discord.gamebot.MessageScheduler;
 import com.billialpha.discord.gamebot.games.Game;
 import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.MemberCache;
+import com.billialpha.discord.gamebot.games.PlayerSet;
 import discord4j.common.util.Snowflake;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.event.domain.message.ReactionAddEvent;
+import discord4j.core.object.entity.Attachment;
 import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.Category;
 import discord4j.core.object.entity.channel.GuildMessageChannel;
 import discord4j.core.object.reaction.ReactionEmoji;
+import discord4j.discordjson.json.MessageCreateRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Created on 11/03/2021.
@@ -32,24 +39,53 @@ import java.util.stream.Collectors;
  */
 public class QuizzGame implements Game {
     public static final Logger LOG = LoggerFactory.getLogger(QuizzGame.class);
+    public static final String DEFAULT_CATEGORY = "question pour un chalet";
+    public static final Duration DEFAULT_ROUND_DURATION = Duration.ofSeconds(60);
+    private static final int LIVE_ROUNDS = 8; // Rounds kept in memory
+    // Journal record types
+    static final int RECORD_HOST = FIRST_RECORD_TYPE;
+    static final int RECORD_DURATION = FIRST_RECORD_TYPE + 1;
+    static final int RECORD_ROUND_START = FIRST_RECORD_TYPE + 2;
+    static final int RECORD_ROUND_MESSAGE = FIRST_RECORD_TYPE + 3;
+    static final int RECORD_ANSWER = FIRST_RECORD_TYPE + 4;
+    static final int RECORD_ROUND_STOP = FIRST_RECORD_TYPE + 5;
+    static final int RECORD_DECK = FIRST_RECORD_TYPE + 6;
+    static final int RECORD_DECK_NEXT = FIRST_RECORD_TYPE + 7;
     public final GameInstance game;
-    private final List<QuizzRound> rounds;
-    private Tuple2<Snowflake, Snowflake> messageId;
-    private Snowflake hostPlayer;
+    private final RoundHistory rounds;
+    private final String categoryName;
+    private volatile Mono<List<Snowflake>> answerChannels;
+    private volatile Duration roundDuration;
+    private volatile Tuple2<Snowflake, Snowflake> messageId;
+    private volatile Snowflake hostPlayer;
+    private volatile QuizzDeck deck;
+    private volatile int deckNext; // Position of the next question of the deck
+    private volatile QuizzRound preparedRound; // Next round of the deck, rendered while the current one runs
 
     public QuizzGame(GameInstance inst) {
         this.game = inst;
-        rounds = new ArrayList<>();
+        rounds = new RoundHistory(LIVE_ROUNDS);
+        // Options: name of the category holding the answer channels
+        categoryName = inst.getOptions().isEmpty() ? DEFAULT_CATEGORY : inst.getOptions();
+        roundDuration = DEFAULT_ROUND_DURATION;
     }
 
     @Override
     public Mono<Void> onStart(GuildMessageChannel chan, Member player) {
         hostPlayer = player.getId();
-        game.registerPlayer(hostPlayer);
+        game.registerPlayer(player);
         return chan.createMessage("**On démarre un quizz !**\n" +
                 "Réagissez à ce message pour participer.\n\n" +
                 "Quand l'hôte réagis la partie commence.")
-                .doOnSuccess(msg -> messageId = Tuples.of(chan.getId(), msg.getId()))
+                .doOnSuccess(msg -> {
+                    messageId = Tuples.of(chan.getId(), msg.getId());
+                    game.registerMessage(chan.getId(), msg.getId());
+                    game.journal(RECORD_HOST, out -> {
+                        out.writeLong(hostPlayer.asLong());
+                        out.writeLong(chan.getId().asLong());
+                        out.writeLong(msg.getId().asLong());
+                    });
+                })
                 .flatMap(m -> m.addReaction(ReactionEmoji.unicode("✅"))).then();
     }
 
@@ -60,14 +96,17 @@ public class QuizzGame implements Game {
         boolean isHost = evt.getUserId().equals(hostPlayer);
         if (evt.getMessageId().equals(messageId.getT2())) {
             if (game.getState() == GameInstance.State.STARTING) {
-                game.registerPlayer(evt.getUserId());
+                evt.getMember().ifPresentOrElse(game::registerPlayer, () -> game.registerPlayer(evt.getUserId()));
                 if (isHost) {
-                    if (getActualPlayers().size() < 1) {
-                        game.setInactive();
+                    if (getActualPlayerCount() < 1) {
+                        if (!game.compareAndSetState(GameInstance.State.STARTING, GameInstance.State.INACTIVE))
+                            return Mono.empty();
                         return evt.getMessage()
                                 .flatMap(m -> m.edit(e -> e.setContent("Il n'y a pas assez de joueurs !")))
                                 .flatMap(Message::removeAllReactions);
                     }
+                    if (!game.compareAndSetState(GameInstance.State.STARTING, GameInstance.State.ACTIVE))
+                        return Mono.empty();
                     return launchGame();
                 }
                 return Mono.empty();
@@ -75,37 +114,43 @@ public class QuizzGame implements Game {
             return Mono.empty();
         }
         if (!isHost) return Mono.empty(); // Not the host
-        List<QuizzRound> reversedRounds = new ArrayList<>(rounds.size());
-        reversedRounds.addAll(rounds);
-        Collections.reverse(reversedRounds);
-        return Flux.fromIterable(reversedRounds)
-                .filter(r -> r.getMessageId().equals(evt.getMessageId()))
-                .flatMap(QuizzRound::stop)
-                .then();
+        QuizzRound round = rounds.getByMessage(evt.getMessageId());
+        return round != null ? round.stop() : Mono.empty();
     }
 
     @Override
-    public Mono<Void> onDirectMessage(MessageCreateEvent evt) {
+    public Mono<Void> onDirectMessage(MessageCreateEvent evt, long receivedAt) {
         User p = evt.getMessage().getAuthor().orElse(null);
         Objects.requireNonNull(p, "Message sender cannot be null");
         if (p.getId().equals(hostPlayer)) {
+            if (!evt.getMessage().getAttachments().isEmpty()) return loadDeck(evt.getMessage());
             String[] msg = evt.getMessage().getContent().split("\n", 2);
             if (msg[0].equals("stop")) {
                 game.setInactive();
-                return game.client.getChannelById(messageId.getT1())
-                        .ofType(GuildMessageChannel.class)
-                        .flatMap(chan -> chan.createMessage("**Le quizz est terminé**"))
-                        .then();
+                return onStop();
             }
-            String desc = msg.length > 1 && msg[1].length() > 0 ? msg[1] : null;
-            QuizzRound round = new QuizzRound(this, messageId.getT1(), msg[0], desc);
-            rounds.add(round);
+            if (msg[0].startsWith("%durée ")) return setRoundDuration(evt.getMessage(), msg[0].substring(7));
+            // Lines starting with '=' are expected answers, the others describe the question
+            List<String> expected = new ArrayList<>();
+            StringBuilder desc = new StringBuilder();
+            if (msg.length > 1) {
+                for (String line : msg[1].split("\n")) {
+                    if (line.startsWith("=")) {
+                        if (line.length() > 1) expected.add(line.substring(1).trim());
+                    } else {
+                        if (desc.length() > 0) desc.append('\n');
+                        desc.append(line);
+                    }
+                }
+            }
+            QuizzRound round = new QuizzRound(this, rounds.getCount(), messageId.getT1(), msg[0],
+                    desc.length() > 0 ? desc.toString() : null, expected);
+            addRound(round);
             return round.start(evt.getMessage());
         }
-        if (rounds.size()<1) return Mono.empty(); // No Round
-        QuizzRound round = rounds.get(rounds.size()-1);
-        if (!round.isRunning()) return Mono.empty();
-        return round.onAnswer(p, evt.getMessage().getContent())
+        QuizzRound round = rounds.getLast();
+        if (round == null || !round.isRunning()) return Mono.empty(); // No running round
+        return round.onAnswer(p, evt.getMessage().getContent(), evt.getMessage().getId(), receivedAt)
                 .flatMap(reply -> evt.getMessage().getChannel()
                         .flatMap(chan -> chan.createMessage(x -> {
                             x.setMessageReference(evt.getMessage().getId());
@@ -115,18 +160,15 @@ public class QuizzGame implements Game {
     }
 
     @Override
-    public Mono<Void> onGuildMessage(MessageCreateEvent evt) {
+    public Mono<Void> onGuildMessage(MessageCreateEvent evt, long receivedAt) {
         User p = evt.getMessage().getAuthor().orElse(null);
         Objects.requireNonNull(p, "Message sender cannot be null");
         if (p.getId().equals(hostPlayer)) return Mono.empty();
-        String msg = evt.getMessage().getContent();
-        String selfMentionRegex = "^<@!?"+ game.client.getSelfId().asLong()+">";
-        if (!msg.matches(selfMentionRegex+".*")) return Mono.empty(); // Not mention
-        String answer = msg.replaceFirst(selfMentionRegex, "").trim();
-        if (rounds.size()<1) return Mono.empty(); // No round
-        QuizzRound round = rounds.get(rounds.size()-1);
-        if (!round.isRunning()) return Mono.empty();
-        return round.onAnswer(p, answer)
+        String answer = game.getBot().getParser().stripSelfMention(evt.getMessage().getContent());
+        if (answer == null) return Mono.empty(); // Not mention
+        QuizzRound round = rounds.getLast();
+        if (round == null || !round.isRunning()) return Mono.empty(); // No running round
+        return round.onAnswer(p, answer, evt.getMessage().getId(), receivedAt)
                 .flatMap(reply -> evt.getMessage().getChannel()
                         .flatMap(chan -> chan.createMessage(x -> {
                             x.setMessageReference(evt.getMessage().getId());
@@ -135,42 +177,318 @@ public class QuizzGame implements Game {
                 .then();
     }
 
-    public Set<Snowflake> getActualPlayers() {
-        return game.getPlayers().stream().filter(id -> !id.equals(hostPlayer)).collect(Collectors.toSet());
+    // --- Decks ---
+
+    /**
+     * Downloads and parses a deck uploaded by the host, then asks its questions back-to-back
+     */
+    private Mono<Void> loadDeck(Message source) {
+        Attachment file = source.getAttachments().iterator().next();
+        if (file.getSize() > QuizzDeck.MAX_SIZE)
+            return replyTo(source, "Le fichier est trop gros ("+QuizzDeck.MAX_SIZE/1024+" Ko maximum).");
+        return HttpClient.create().get().uri(file.getUrl())
+                .responseSingle((res, body) -> res.status().code() == 200 ? body.asInputStream()
+                        : Mono.error(new IOException("Download failed: "+res.status())))
+                .flatMap(in -> Mono.fromCallable(() -> {
+                    try (InputStream stream = in) {
+                        return QuizzDeck.parse(file.getFilename(), stream);
+                    }
+                }))
+                .flatMap(loaded -> game.submit(() -> startDeck(loaded, source))) // Back in the mailbox
+                .onErrorResume(IOException.class, err -> replyTo(source, "Fichier invalide : "+err.getMessage()));
+    }
+
+    private Mono<Void> startDeck(QuizzDeck loaded, Message source) {
+        LOG.info("Loaded deck of "+loaded.size()+" questions");
+        deck = loaded;
+        deckNext = 0;
+        preparedRound = null;
+        game.journal(RECORD_DECK, loaded::write);
+        game.journal(RECORD_DECK_NEXT, out -> out.writeInt(0));
+        Mono<Void> ack = source.addReaction(ReactionEmoji.unicode("✅"))
+                .then(replyTo(source, "**"+loaded.size()+" questions chargées.** Envoyez `stop` pour terminer le quizz."));
+        QuizzRound current = rounds.getLast();
+        if (current != null && current.isRunning()) return ack.then(prepareNextRound()); // Asked after this one
+        return ack.then(startDeckRound(0));
+    }
+
+    /**
+     * Called when a round stops, the next question of the deck is asked right away
+     */
+    void onRoundStop(QuizzRound round) {
+        QuizzDeck current = deck;
+        if (current == null || deckNext >= current.size() || game.getState() != GameInstance.State.ACTIVE) return;
+        if (round != rounds.getLast()) return; // Not the last round asked
+        long stoppedAt = System.nanoTime();
+        game.submit(() -> startDeckRound(stoppedAt))
+                .subscribe(null, err -> LOG.warn("Error while starting deck round", err));
+    }
+
+    /**
+     * @param transitionStart When the previous round stopped, by {@link System#nanoTime()}, 0 if none
+     */
+    private Mono<Void> startDeckRound(long transitionStart) {
+        QuizzDeck current = deck;
+        int position = deckNext;
+        if (current == null || position >= current.size() || game.getState() != GameInstance.State.ACTIVE)
+            return Mono.empty();
+        QuizzRound last = rounds.getLast();
+        if (last != null && last.isRunning()) return Mono.empty(); // Started meanwhile
+        QuizzRound round = preparedRound;
+        preparedRound = null;
+        if (round == null || round.index != rounds.getCount()) round = newDeckRound(current, position);
+        deckNext = position + 1;
+        game.journal(RECORD_DECK_NEXT, out -> out.writeInt(position + 1));
+        if (transitionStart != 0) round.setTransitionStart(transitionStart);
+        addRound(round);
+        return round.start(null).then(game.submit(this::prepareNextRound));
+    }
+
+    /**
+     * Renders the next round of the deck and resolves its answer channels, so starting it is only sending
+     */
+    private Mono<Void> prepareNextRound() {
+        QuizzDeck current = deck;
+        int position = deckNext;
+        if (current == null || position >= current.size()) return Mono.empty();
+        preparedRound = newDeckRound(current, position);
+        return getAnswerChannels().then();
+    }
+
+    private QuizzRound newDeckRound(QuizzDeck current, int position) {
+        QuizzDeck.Question question = current.get(position);
+        return new QuizzRound(this, rounds.getCount(), messageId.getT1(), question.title, question.desc,
+                question.expected);
+    }
+
+    // --- Rounds ---
+
+    private void addRound(QuizzRound round) {
+        rounds.add(round, dropped -> {
+            if (dropped.getMessageId() != null) game.unregisterMessage(dropped.channelId, dropped.getMessageId());
+        });
+    }
+
+    /**
+     * Called once the guild message of a round is known, host reactions to it stop the round
+     */
+    void onRoundMessage(QuizzRound round) {
+        rounds.onMessage(round);
+    }
+
+    private static Mono<Void> replyTo(Message source, String content) {
+        return source.getChannel().flatMap(chan -> chan.createMessage(content)).then();
+    }
+
+    /**
+     * Host commands in the guild: {@code %quizz durée <secondes>}
+     */
+    @Override
+    public Mono<Void> onCommand(MessageCreateEvent evt, String args) {
+        User p = evt.getMessage().getAuthor().orElse(null);
+        if (p == null || !p.getId().equals(hostPlayer)) return Mono.empty();
+        if (args.startsWith("durée ")) return setRoundDuration(evt.getMessage(), args.substring(6));
+        return evt.getMessage().addReaction(ReactionEmoji.unicode("❓"));
+    }
+
+    private Mono<Void> setRoundDuration(Message msg, String value) {
+        long seconds;
+        try {
+            seconds = Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return msg.addReaction(ReactionEmoji.unicode("❓"));
+        }
+        if (seconds < 5 || seconds > 3600) return msg.addReaction(ReactionEmoji.unicode("❓"));
+        roundDuration = Duration.ofSeconds(seconds);
+        game.journal(RECORD_DURATION, out -> out.writeLong(seconds));
+        return msg.addReaction(ReactionEmoji.unicode("✅"));
     }
 
-    public Flux<GuildMessageChannel> getAnswerChannels() {
-        String catName = "question pour un chalet"; // FIXME: Hardcoded category name
-        return game.client.getGuildChannels(game.getGuildId())
-                .ofType(Category.class)
-                .filter(c -> c.getName().equalsIgnoreCase(catName))
-                .single()
-                .flatMapMany(Category::getChannels)
+    @Override
+    public Mono<Void> onStop() {
+        if (messageId == null) return Mono.empty();
+        return game.client.getChannelById(messageId.getT1())
                 .ofType(GuildMessageChannel.class)
-                .filter(c -> !c.getId().equals(messageId.getT1()));
+                .flatMap(chan -> chan.createMessage("**Le quizz est terminé**"))
+                .then();
+    }
+
+    /**
+     * Essential messages: from the host, and the first answer of a player to the running round
+     */
+    @Override
+    public boolean isEssential(MessageCreateEvent evt) {
+        Snowflake author = evt.getMessage().getAuthor().map(User::getId).orElse(null);
+        if (author == null) return false;
+        if (author.equals(hostPlayer)) return true;
+        if (evt.getGuildId().isPresent()
+                && game.getBot().getParser().stripSelfMention(evt.getMessage().getContent()) == null)
+            return false; // Not an answer
+        QuizzRound round = rounds.getLast();
+        return round != null && round.isRunning() && !round.hasAnswered(author);
+    }
+
+    /**
+     * Essential reactions: joining the lobby, and the host stopping a running round
+     */
+    @Override
+    public boolean isEssential(ReactionAddEvent evt) {
+        Tuple2<Snowflake, Snowflake> lobby = messageId;
+        if (lobby != null && evt.getMessageId().equals(lobby.getT2()))
+            return game.getState() == GameInstance.State.STARTING;
+        if (!evt.getUserId().equals(hostPlayer)) return false;
+        QuizzRound round = rounds.getByMessage(evt.getMessageId());
+        return round != null && round.isRunning();
+    }
+
+    @Override
+    public Mono<Void> onExpire() {
+        if (messageId == null) return Mono.empty();
+        return game.client.getChannelById(messageId.getT1())
+                .ofType(GuildMessageChannel.class)
+                .flatMap(chan -> chan.createMessage("**Le quizz a expiré**"))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> onChannelsChange() {
+        answerChannels = null;
+        return Mono.empty();
+    }
+
+    // --- Persistence ---
+
+    @Override
+    public void replay(int type, DataInput in) throws IOException {
+        if (type == RECORD_HOST) {
+            hostPlayer = Snowflake.of(in.readLong());
+            messageId = Tuples.of(Snowflake.of(in.readLong()), Snowflake.of(in.readLong()));
+        } else if (type == RECORD_DURATION) {
+            roundDuration = Duration.ofSeconds(in.readLong());
+        } else if (type == RECORD_DECK) {
+            deck = QuizzDeck.read(in);
+        } else if (type == RECORD_DECK_NEXT) {
+            deckNext = in.readInt();
+        } else if (type == RECORD_ROUND_START) {
+            QuizzRound round = QuizzRound.replay(this, in);
+            // Otherwise a duplicate from a snapshot, the game messages are replayed on their own
+            if (round.index >= rounds.getCount()) rounds.add(round, dropped -> {});
+        } else {
+            int index = in.readInt();
+            if (index >= rounds.getCount()) throw new IOException("Unknown round: "+index);
+            QuizzRound round = rounds.get(index);
+            if (round != null) round.replay(type, in); // Otherwise dropped from memory since
+        }
+    }
+
+    @Override
+    public void snapshot(GameInstance.RecordSink sink) throws IOException {
+        Tuple2<Snowflake, Snowflake> lobby = messageId;
+        if (lobby != null) sink.append(RECORD_HOST, out -> {
+            out.writeLong(hostPlayer.asLong());
+            out.writeLong(lobby.getT1().asLong());
+            out.writeLong(lobby.getT2().asLong());
+        });
+        long seconds = roundDuration.getSeconds();
+        sink.append(RECORD_DURATION, out -> out.writeLong(seconds));
+        QuizzDeck current = deck;
+        if (current != null) {
+            int next = deckNext;
+            sink.append(RECORD_DECK, current::write);
+            sink.append(RECORD_DECK_NEXT, out -> out.writeInt(next));
+        }
+        for (QuizzRound round : rounds.getRounds()) round.snapshot(sink);
+    }
+
+    @Override
+    public Mono<Void> onRecover() {
+        return Flux.fromIterable(rounds.getRounds())
+                .filter(QuizzRound::isRunning)
+                .flatMap(QuizzRound::recover)
+                .then(game.submit(() -> startDeckRound(0))); // Resume the deck if no round is running
+    }
+
+    /**
+     * @return How long players can answer a question
+     */
+    public Duration getRoundDuration() {
+        return roundDuration;
+    }
+
+    /**
+     * @return The number of players, without the host
+     */
+    public int getActualPlayerCount() {
+        PlayerSet players = game.getPlayers();
+        Snowflake host = hostPlayer;
+        return players.size() - (host != null && players.contains(host.asLong()) ? 1 : 0);
+    }
+
+    /**
+     * @return The ids of the answer channels, resolved once until guild channels change
+     */
+    public Mono<List<Snowflake>> getAnswerChannels() {
+        Mono<List<Snowflake>> channels = answerChannels;
+        if (channels == null) {
+            channels = game.client.getGuildChannels(game.getGuildId())
+                    .ofType(Category.class)
+                    .filter(c -> c.getName().equalsIgnoreCase(categoryName))
+                    .single()
+                    .flatMapMany(Category::getChannels)
+                    .ofType(GuildMessageChannel.class)
+                    .map(GuildMessageChannel::getId)
+                    .filter(id -> !id.equals(messageId.getT1()))
+                    .collectList()
+                    // Keep resolved channels, but retry on error
+                    .cache(x -> Duration.ofMillis(Long.MAX_VALUE), err -> Duration.ZERO, () -> Duration.ZERO);
+            answerChannels = channels;
+        }
+        return channels;
+    }
+
+    /**
+     * Sends a message in every answer channel, as close together as rate limits allow
+     * @param rotation The channel served first, rotated so no team is always served last
+     * @return The delivery report
+     */
+    public Mono<MessageScheduler.FanOut> sendToAnswerChannels(String content, int rotation) {
+        return sendToAnswerChannels(MessageCreateRequest.builder().content(content).build(), rotation);
+    }
+
+    /**
+     * @param request The message, rendered once for every channel
+     */
+    public Mono<MessageScheduler.FanOut> sendToAnswerChannels(MessageCreateRequest request, int rotation) {
+        return getAnswerChannels()
+                .flatMap(ids -> game.getBot().getMessageScheduler().fanOut(ids, rotation,
+                        id -> game.client.rest().getChannelById(id).createMessage(request)));
     }
 
     private Mono<Void> launchGame() {
-        return Mono.fromRunnable(game::setActive)
-                // Update game message
-                .thenMany(Flux.fromIterable(getActualPlayers()))
-                .flatMap(game.client::getUserById)
-                .map(User::getMention)
-                .collect(Collectors.joining("\n • "))
-                .map(playerList -> "**Le quizz à démarré**\nParticipants:\n • "+playerList)
-                .flatMap(message -> game.client.getMessageById(messageId.getT1(), messageId.getT2())
-                        .flatMap(msg -> msg.edit(m -> m.setContent(message))))
+        MemberCache members = game.getBot().getMemberCache();
+        StringBuilder message = new StringBuilder("**Le quizz à démarré**\nParticipants:");
+        long host = hostPlayer.asLong();
+        Snowflake guildId = game.getGuildId();
+        game.getPlayers().forEachId(id -> {
+            if (id != host) message.append("\n • ").append(members.getDisplayName(guildId, Snowflake.of(id)));
+        });
+        // Update game message
+        return game.client.getMessageById(messageId.getT1(), messageId.getT2())
+                .flatMap(msg -> msg.edit(m -> m.setContent(message.toString())))
                 .flatMap(Message::removeAllReactions)
                 // Send message to host
                 .thenReturn(hostPlayer)
                 .flatMap(game.client::getUserById)
                 .flatMap(User::getPrivateChannel)
                 .flatMap(c -> c.createMessage("Dès que vous êtes prêt, envoyez la question.\n" +
+                        "Ajoutez des lignes `= réponse` pour corriger automatiquement.\n" +
+                        "Envoyez `%durée <secondes>` pour changer le temps de réponse " +
+                        "("+roundDuration.getSeconds()+"s).\n" +
+                        "Vous pouvez aussi envoyer un fichier de questions (texte ou JSON) pour les enchaîner.\n" +
                         "Envoyez `stop` pour terminer le quizz."))
                 // Send message in player channels
-                .thenMany(getAnswerChannels())
-                .flatMap(chan -> chan.createMessage("*La partie vient de commencer, " +
-                        "vous allez recevoir les questions ici.*"))
+                .then(sendToAnswerChannels("*La partie vient de commencer, " +
+                        "vous allez recevoir les questions ici.*", 0))
                 .then();
     }
 }
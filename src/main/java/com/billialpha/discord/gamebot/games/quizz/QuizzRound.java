@@ -1,150 +1,380 @@
 package com.billialpha.discord.gamebot.games.quizz;
 
+import com.billialpha.discord.gamebot.MessageScheduler;
+import com.billialpha.discord.gamebot.TimerWheel;
 import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.MemberCache;
+import com.billialpha.discord.gamebot.metrics.BotMetrics;
+import com.billialpha.discord.gamebot.scores.Leaderboard;
 import discord4j.common.util.Snowflake;
-import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.User;
-import discord4j.core.object.entity.channel.GuildMessageChannel;
 import discord4j.core.object.reaction.ReactionEmoji;
 import discord4j.core.spec.EmbedCreateSpec;
+import discord4j.discordjson.json.EmbedData;
+import discord4j.discordjson.json.MessageCreateRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A single game round
  */
 public class QuizzRound {
     public static final Logger LOG = LoggerFactory.getLogger(QuizzRound.class);
+    private static final int FIELD_MAX_LENGTH = 1024; // Discord limit of an embed field value
+    private static final int FIELD_RESERVED = 32; // Room for the count of answers not listed
     private final QuizzGame quizz;
+    public final int index;
     public final Snowflake channelId;
     public final String title;
     public final String desc;
-    private Instant startTime;
-    private Snowflake messageId;
-    private final Map<Snowflake, Answer> answers;
-    private boolean running;
+    private volatile Instant startTime;
+    private volatile Duration duration;
+    private volatile Snowflake messageId;
+    private final AnswerMatcher matcher;
+    private final AnswerLog answers;
+    private final AtomicBoolean running;
+    private final AtomicInteger restCalls;
+    private final EmbedUpdater<Message> updater;
+    private final MessageCreateRequest question; // Rendered once, possibly before the round starts
+    private final EmbedData initialEmbed;
+    private volatile long transitionStart;
+    private volatile TimerWheel.Timeout timeout;
 
-    public QuizzRound(QuizzGame quizz, Snowflake channelId, String title, String desc) {
+    /**
+     * @param expected The accepted answers, answers are graded automatically unless empty
+     */
+    public QuizzRound(QuizzGame quizz, int index, Snowflake channelId, String title, String desc,
+                      List<String> expected) {
         this.quizz = quizz;
+        this.index = index;
         this.channelId = channelId;
         this.title = title;
         this.desc = desc;
-        this.answers = new HashMap<>();
-        this.running = false;
+        this.matcher = expected.isEmpty() ? null : new AnswerMatcher(expected);
+        this.answers = new AnswerLog(matcher);
+        this.running = new AtomicBoolean(false);
+        this.restCalls = new AtomicInteger();
+        this.updater = new EmbedUpdater<>(this::editMessage);
+        this.question = MessageCreateRequest.builder()
+                .content("> **"+title+"**"+(desc != null ? "\n"+desc : ""))
+                .build();
+        EmbedCreateSpec embed = new EmbedCreateSpec();
+        createEmbed(embed, title, desc, null, 0, true);
+        this.initialEmbed = embed.asRequest();
     }
 
     public Snowflake getMessageId() {
         return messageId;
     }
 
+    /**
+     * @return Whether answers are graded against expected answers
+     */
+    public boolean isGraded() {
+        return matcher != null;
+    }
+
     public boolean isRunning() {
-        return running;
+        return running.get();
     }
 
     public Flux<Answer> getAnswers() {
-        return Flux.fromIterable(answers.values())
-                .sort(Comparator.comparing(a -> a.time));
+        return Flux.fromIterable(answers.ordered());
+    }
+
+    /**
+     * @return Whether a player already answered, without building the answer
+     */
+    public boolean hasAnswered(Snowflake player) {
+        return answers.contains(player.asLong());
     }
 
     public Optional<Answer> getAnswer(Snowflake player) {
         return Optional.ofNullable(answers.get(player));
     }
 
+    /**
+     * Marks the end of the previous round, the time until this question is delivered is recorded
+     * @param transitionStart When the previous round stopped, by {@link System#nanoTime()}
+     */
+    void setTransitionStart(long transitionStart) {
+        this.transitionStart = transitionStart;
+    }
+
+    /**
+     * @param source The message of the host asking the question, acknowledged once sent, or null
+     */
     public Mono<Void> start(Message source) {
-        if (running) return Mono.error(new IllegalStateException("Round already running"));
-        this.running = true;
+        if (!running.compareAndSet(false, true))
+            return Mono.error(new IllegalStateException("Round already running"));
         this.startTime = Instant.now();
+        answers.setStart(startTime, System.nanoTime());
         LOG.info("Starting round: "+title);
-        // Timeout 60s
-        Mono.just(1).delayElement(Duration.ofSeconds(60)) // FIXME: Hardcoded timeout
-                .flatMap(x -> stop())
-                .subscribe();
+        this.duration = quizz.getRoundDuration();
+        quizz.game.journal(QuizzGame.RECORD_ROUND_START, this::writeStart);
+        quizz.game.getBot().getMetrics().roundsStarted.increment();
+        scheduleTimeout(duration);
 
+        // Requests are queued in order: the question goes first, it is the one players wait for
         return Mono.when(
-                // Acknowledge host question
-                source.addReaction(ReactionEmoji.unicode("✅")),
+                // Send question in channels
+                Mono.defer(() -> {
+                    long scheduledAt = System.nanoTime();
+                    return quizz.sendToAnswerChannels(question, index)
+                            .doOnNext(fanOut -> onQuestionSent(fanOut, scheduledAt));
+                }),
 
                 // Create guild message
-                quizz.game.client.getChannelById(channelId)
-                        .ofType(GuildMessageChannel.class)
-                        .flatMap(chan -> chan.createEmbed(x -> createEmbed(x, title, desc, null, running)))
-                        .doOnSuccess(m -> messageId = m.getId())
-                        .flatMap(m -> m.addReaction(ReactionEmoji.unicode("\uD83D\uDCBE"))), // Icon: Floppy disk
+                quizz.game.client.rest().getChannelById(channelId)
+                        .createMessage(initialEmbed)
+                        .map(data -> new Message(quizz.game.client, data))
+                        .doOnSuccess(m -> {
+                            restCalls.incrementAndGet();
+                            messageId = m.getId();
+                            quizz.game.registerMessage(channelId, messageId);
+                            quizz.onRoundMessage(this);
+                            quizz.game.journal(QuizzGame.RECORD_ROUND_MESSAGE, out -> {
+                                out.writeInt(index);
+                                out.writeLong(m.getId().asLong());
+                            });
+                            updater.setMessage(m);
+                        })
+                        .flatMap(m -> m.addReaction(ReactionEmoji.unicode("\uD83D\uDCBE"))) // Icon: Floppy disk
+                        .doOnSuccess(x -> restCalls.incrementAndGet()),
 
-                // Send question in channels
-                quizz.getAnswerChannels()
-                        .parallel()
-                        .flatMap(chan -> chan.createMessage("> **"+title+"**"+(desc != null ? "\n"+desc : "")))
+                // Acknowledge host question
+                source == null ? Mono.empty() : source.addReaction(ReactionEmoji.unicode("✅"))
+                        .doOnSuccess(x -> restCalls.incrementAndGet())
         );
     }
 
-    public Mono<String> onAnswer(User player, String msg) {
+    private void onQuestionSent(MessageScheduler.FanOut fanOut, long scheduledAt) {
+        restCalls.addAndGet((int) fanOut.getSent());
+        if (fanOut.getSent() == 0) return;
+        BotMetrics metrics = quizz.game.getBot().getMetrics();
+        metrics.fanOutSpread.record(fanOut.getSpread().toNanos());
+        if (transitionStart != 0)
+            metrics.roundGap.record(scheduledAt + fanOut.getFirstDelivery().toNanos() - transitionStart);
+        LOG.info("Question sent to "+fanOut.getSent()+" channels, first after "+fanOut.getFirstDelivery().toMillis()+
+                "ms, spread "+fanOut.getSpread().toMillis()+"ms");
+    }
+
+    /**
+     * @param messageId The answer message, its snowflake tells when the player sent it
+     * @param receivedAt When the answer was received from the gateway, by {@link System#nanoTime()}
+     */
+    public Mono<String> onAnswer(User player, String msg, Snowflake messageId, long receivedAt) {
         Objects.requireNonNull(player);
         Objects.requireNonNull(msg);
-        if (!running) return Mono.error(new IllegalStateException("Round not running"));
-        int order;
-        Answer answer;
-        synchronized (answers) {
-            if (answers.containsKey(player.getId())) return Mono.empty();
-            LOG.info("Registering answer: "+player.getUsername()+" >> "+msg);
-            answer = new Answer(player.getId(), Instant.now(), msg);
-            answers.put(player.getId(), answer);
-            order = answers.size();
+        if (!running.get()) return Mono.error(new IllegalStateException("Round not running"));
+        long handledAt = System.nanoTime();
+        Answer answer = answers.append(player.getId(), msg, messageId.getTimestamp().toEpochMilli(), receivedAt);
+        if (answer == null) return Mono.empty(); // Already answered
+        LOG.info("Registering answer: "+player.getUsername()+" >> "+msg);
+        quizz.game.journal(QuizzGame.RECORD_ANSWER, out -> writeAnswer(out, answer));
+        BotMetrics metrics = quizz.game.getBot().getMetrics();
+        metrics.answers.increment();
+        metrics.answerTime.record(TimeUnit.NANOSECONDS.toMillis(answer.elapsedNanos));
+        metrics.answerQueueDelay.record(handledAt - receivedAt);
+        if (quizz.game.getBot().isTimingDiagnostics()) {
+            // Receive wall time, rebuilt from the monotonic clock, against the Discord send time
+            Instant received = Instant.now().minusNanos(System.nanoTime() - receivedAt);
+            LOG.info("Answer timing: "+player.getUsername()+" skew "+answer.sentAt.until(received, ChronoUnit.MILLIS)+
+                    "ms, queued "+TimeUnit.NANOSECONDS.toMicros(handledAt - receivedAt)/1000f+"ms");
         }
+        int order = answer.order; // An answer sent earlier may still arrive, the order can shift
+        quizz.game.touch();
 
         // Default: update guild message
-        Mono<Void> mono = quizz.game.client.getMessageById(channelId, messageId)
-                .flatMap(this::editMessage).then();
+        Mono<Void> mono = Mono.fromRunnable(updater::request);
 
         // All players answered: stop
-        if (order == quizz.getActualPlayers().size())
+        if (answers.size() == quizz.getActualPlayerCount())
             mono = stop();
 
         // Return reply: tell order to player
         return mono.thenReturn("Vous êtes "+order+(order == 1 ? "er" : "ème")+
-                " ("+answer.getResponseTime(startTime)+"s)");
+                " ("+answer.getResponseTime()+"s)");
     }
 
     public Mono<Void> stop() {
-        if (!running) return Mono.empty();
+        if (!running.compareAndSet(true, false)) return Mono.empty();
         LOG.info("Ending round");
-        this.running = false;
+        TimerWheel.Timeout timer = timeout;
+        if (timer != null) timer.cancel();
+        quizz.game.journal(QuizzGame.RECORD_ROUND_STOP, out -> out.writeInt(index));
+        quizz.game.getBot().getMetrics().roundsFinished.increment();
+        awardPoints();
+        quizz.onRoundStop(this);
         // Update guild message
-        return quizz.game.client.getMessageById(channelId, messageId)
-                .flatMap(this::editMessage)
+        return updater.flush()
                 .flatMap(Message::removeAllReactions)
+                .doFinally(sig -> quizz.game.getBot().getMetrics().roundRestCalls.record(restCalls.incrementAndGet()))
                 .then();
     }
 
+    /**
+     * Adds the points of each answer to the guild leaderboard
+     */
+    private void awardPoints() {
+        Leaderboard leaderboard = quizz.game.getBot().getLeaderboard();
+        long durationMillis = Math.max(1, duration.toMillis());
+        int rank = 0;
+        for (Answer answer : answers.ordered()) {
+            if (isGraded() && !answer.correct) continue; // Only correct answers score, ranked among them
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(answer.elapsedNanos);
+            leaderboard.addPoints(quizz.game.getGuildId(), answer.userId,
+                    Answer.getPoints(++rank, elapsed, durationMillis));
+        }
+    }
+
+    private void scheduleTimeout(Duration delay) {
+        timeout = quizz.game.getBot().getTimers().schedule(delay,
+                () -> quizz.game.submit(this::stop).subscribe());
+    }
+
+    // --- Persistence ---
+
+    private void writeStart(DataOutput out) throws IOException {
+        out.writeInt(index);
+        out.writeLong(channelId.asLong());
+        out.writeUTF(title);
+        out.writeBoolean(desc != null);
+        if (desc != null) out.writeUTF(desc);
+        out.writeLong(startTime.toEpochMilli());
+        out.writeLong(duration.toMillis());
+        List<String> expected = matcher != null ? matcher.getExpected() : List.of();
+        out.writeInt(expected.size());
+        for (String exp : expected) out.writeUTF(exp);
+    }
+
+    private void writeAnswer(DataOutput out, Answer answer) throws IOException {
+        out.writeInt(index);
+        out.writeLong(answer.userId.asLong());
+        out.writeLong(answer.sentAt.toEpochMilli());
+        out.writeLong(answer.elapsedNanos);
+        out.writeUTF(answer.answer);
+    }
+
+    /**
+     * Rebuilds a round from its start record
+     */
+    static QuizzRound replay(QuizzGame quizz, DataInput in) throws IOException {
+        int index = in.readInt();
+        Snowflake channelId = Snowflake.of(in.readLong());
+        String title = in.readUTF();
+        String desc = in.readBoolean() ? in.readUTF() : null;
+        Instant startTime = Instant.ofEpochMilli(in.readLong());
+        Duration duration = Duration.ofMillis(in.readLong());
+        int count = in.readInt();
+        List<String> expected = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) expected.add(in.readUTF());
+        QuizzRound round = new QuizzRound(quizz, index, channelId, title, desc, expected);
+        round.startTime = startTime;
+        round.duration = duration;
+        round.answers.setStart(startTime, System.nanoTime() - Duration.between(startTime, Instant.now()).toNanos());
+        round.running.set(true);
+        return round;
+    }
+
+    /**
+     * Applies a record of this round, the round index was already read
+     */
+    void replay(int type, DataInput in) throws IOException {
+        if (type == QuizzGame.RECORD_ROUND_MESSAGE) {
+            messageId = Snowflake.of(in.readLong());
+            quizz.onRoundMessage(this);
+        } else if (type == QuizzGame.RECORD_ANSWER) {
+            Snowflake userId = Snowflake.of(in.readLong());
+            long sentAt = in.readLong();
+            long elapsedNanos = in.readLong();
+            answers.replay(userId, in.readUTF(), sentAt, elapsedNanos);
+        } else if (type == QuizzGame.RECORD_ROUND_STOP) {
+            running.set(false);
+        } else {
+            throw new IOException("Unknown record type: "+type);
+        }
+    }
+
+    void snapshot(GameInstance.RecordSink sink) throws IOException {
+        sink.append(QuizzGame.RECORD_ROUND_START, this::writeStart);
+        Snowflake msg = messageId;
+        if (msg != null) sink.append(QuizzGame.RECORD_ROUND_MESSAGE, out -> {
+            out.writeInt(index);
+            out.writeLong(msg.asLong());
+        });
+        for (Answer answer : answers.ordered())
+            sink.append(QuizzGame.RECORD_ANSWER, out -> writeAnswer(out, answer));
+        if (!isRunning()) sink.append(QuizzGame.RECORD_ROUND_STOP, out -> out.writeInt(index));
+    }
+
+    /**
+     * Resumes a round replayed while running: its embed is updated again until the remaining time is over
+     */
+    Mono<Void> recover() {
+        Duration remaining = Duration.between(Instant.now(), startTime.plus(duration));
+        if (messageId == null) { // Embed never sent: nothing to update
+            running.set(false);
+            return Mono.empty();
+        }
+        return quizz.game.client.getMessageById(channelId, messageId)
+                .doOnNext(updater::setMessage)
+                .then(Mono.defer(() -> {
+                    if (remaining.isNegative() || remaining.isZero()) return stop();
+                    scheduleTimeout(remaining);
+                    updater.request();
+                    return Mono.empty();
+                }));
+    }
+
     private Mono<Message> editMessage(Message m) {
-        return getAnswers()
-                .flatMap(ans -> ans.describe(quizz.game, startTime, !running))
-                .collectList()
-                .flatMap(ans -> m.edit(e -> e.setEmbed(x -> createEmbed(x, title, desc, ans, running))));
+        boolean running = isRunning();
+        MemberCache members = quizz.game.getBot().getMemberCache();
+        // Only describe the answers that fit in the embed field
+        List<String> ans = new ArrayList<>(Math.min(answers.size(), 64));
+        int length = 0;
+        for (Answer answer : answers.ordered()) {
+            String line = answer.describe(members, quizz.game.getGuildId(), !running, isGraded());
+            length += line.length() + 6; // Number and separators
+            if (length > FIELD_MAX_LENGTH - FIELD_RESERVED) break;
+            ans.add(line);
+        }
+        int total = answers.size();
+        restCalls.incrementAndGet();
+        return m.edit(e -> e.setEmbed(x -> createEmbed(x, title, desc, ans, total, running)));
     }
 
+    /**
+     * @param answers The descriptions of the first answers, numbered in order
+     * @param total The total number of answers, the ones not described are counted
+     */
     public static void createEmbed(EmbedCreateSpec spec, String title, String desc,
-                                   List<String> answers, boolean running) {
+                                   List<String> answers, int total, boolean running) {
         spec.setTitle(title);
         if (desc != null) spec.setDescription(desc);
-        StringBuilder msg = new StringBuilder();
+        StringBuilder msg = new StringBuilder(FIELD_MAX_LENGTH);
         if (answers != null && answers.size() > 0) {
             for (int i = 0; i < answers.size(); i++) {
-                msg.append(i+1).append(") ").append(answers.get(i)).append("\n");
+                msg.append(i+1).append(") ").append(answers.get(i)).append('\n');
             }
+            if (total > answers.size()) msg.append("*... et ").append(total - answers.size()).append(" autres*\n");
             if (running) msg.append("...");
         } else if (!running) {
             msg.append("*Aucune réponse.*");
@@ -155,37 +385,70 @@ public class QuizzRound {
     }
 
     public static class Answer {
+        private static final long FIRST_POINTS = 10;
+        private static final long MIN_POINTS = 2;
+        private static final long SPEED_BONUS = 5;
         public final Snowflake userId;
+        public final Instant sentAt;
         public final Instant time;
+        public final long elapsedNanos;
         public final String answer;
+        public final int order;
+        public final boolean correct;
 
-        public Answer(Snowflake userId, Instant time, String answer) {
+        /**
+         * @param sentAt When the player sent the answer, by Discord
+         * @param time When the answer was received
+         * @param elapsedNanos The time from the round start to the answer receipt, by the monotonic clock
+         */
+        public Answer(Snowflake userId, Instant sentAt, Instant time, long elapsedNanos, String answer,
+                      int order, boolean correct) {
             this.userId = Objects.requireNonNull(userId);
+            this.sentAt = Objects.requireNonNull(sentAt);
             this.time = Objects.requireNonNull(time);
+            this.elapsedNanos = elapsedNanos;
             this.answer = Objects.requireNonNull(answer);
+            this.order = order;
+            this.correct = correct;
         }
 
         public Snowflake getUserId() {
             return userId;
         }
 
+        public Instant getSentAt() {
+            return sentAt;
+        }
+
         public Instant getTime() {
             return time;
         }
 
-        public String getResponseTime(Instant startTime) {
-            return String.format("%.2f", startTime.until(time, ChronoUnit.MILLIS)/1000f);
+        public String getResponseTime() {
+            return String.format("%.2f", elapsedNanos/1e9);
         }
 
         public String getAnswer() {
             return answer;
         }
 
-        public Mono<String> describe(GameInstance game, Instant startTime, boolean withAnswer) {
-            Mono<String> mono = game.client.getMemberById(game.getGuildId(), userId)
-                    .map(Member::getNicknameMention)
-                    .map(s -> s+" ("+getResponseTime(startTime)+"s)");
-            return withAnswer ? mono.map(s -> s+": `"+answer+"`") : mono;
+        public boolean isCorrect() {
+            return correct;
+        }
+
+        /**
+         * @return The points of an answer: earlier answers earn more, plus a bonus for speed
+         */
+        public static long getPoints(int rank, long elapsedMillis, long durationMillis) {
+            long points = Math.max(MIN_POINTS, FIRST_POINTS - 2L * (rank - 1));
+            long remaining = Math.max(0, durationMillis - elapsedMillis);
+            return points + SPEED_BONUS * remaining / durationMillis;
+        }
+
+        public String describe(MemberCache members, Snowflake guildId, boolean withAnswer, boolean graded) {
+            String desc = members.getDisplayName(guildId, userId)+" ("+getResponseTime()+"s)";
+            if (!withAnswer) return desc;
+            return desc+": `"+answer+"`"+(graded ? (correct ? " ✅" : " ❌") : "");
         }
     }
 }
@@ -0,0 +1,100 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import discord4j.common.util.Snowflake;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The rounds of a quiz kept in memory, indexed by the id of their guild message
+ *
+ * Only a window of the last rounds is kept: once the window is full, adding a round drops the
+ * oldest stopped ones. Their points are already in the leaderboard, so a quiz of any length
+ * holds a bounded number of rounds.
+ */
+class RoundHistory {
+    private final int capacity;
+    private final ArrayDeque<QuizzRound> rounds; // Oldest first
+    private final Map<Snowflake, QuizzRound> byMessage;
+    private volatile int count;
+
+    RoundHistory(int capacity) {
+        this.capacity = capacity;
+        this.rounds = new ArrayDeque<>(capacity + 1);
+        this.byMessage = new ConcurrentHashMap<>();
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The number of rounds ever asked, i.e. the index of the next round
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The last round asked, or null if none
+     */
+    synchronized QuizzRound getLast() {
+        return rounds.peekLast();
+    }
+
+    /**
+     * @return A round still in memory, or null
+     */
+    synchronized QuizzRound get(int index) {
+        Iterator<QuizzRound> it = rounds.descendingIterator();
+        while (it.hasNext()) {
+            QuizzRound round = it.next();
+            if (round.index == index) return round;
+            if (round.index < index) break;
+        }
+        return null;
+    }
+
+    /**
+     * @return The round whose guild message has an id, or null if none or dropped
+     */
+    QuizzRound getByMessage(Snowflake messageId) {
+        return byMessage.get(messageId);
+    }
+
+    /**
+     * @return The rounds in memory, oldest first
+     */
+    synchronized List<QuizzRound> getRounds() {
+        return new ArrayList<>(rounds);
+    }
+
+    // --- Modifiers ---
+
+    /**
+     * Adds the next round, dropping the oldest stopped rounds beyond the window
+     * Rounds replayed from a snapshot can skip the indices of dropped rounds
+     * @param onDrop Called with each dropped round
+     */
+    synchronized void add(QuizzRound round, Consumer<QuizzRound> onDrop) {
+        if (round.index < count) throw new IllegalArgumentException("Round already added: "+round.index);
+        rounds.addLast(round);
+        count = round.index + 1;
+        if (round.getMessageId() != null) byMessage.put(round.getMessageId(), round);
+        while (rounds.size() > capacity && !rounds.peekFirst().isRunning()) {
+            QuizzRound dropped = rounds.pollFirst();
+            if (dropped.getMessageId() != null) byMessage.remove(dropped.getMessageId(), dropped);
+            onDrop.accept(dropped);
+        }
+    }
+
+    /**
+     * Indexes the guild message of a round, once sent
+     */
+    synchronized void onMessage(QuizzRound round) {
+        if (rounds.contains(round)) byMessage.put(round.getMessageId(), round);
+    }
+}
@@ -0,0 +1,102 @@
+package com.billialpha.discord.gamebot.gateway;
+
+import com.billialpha.discord.gamebot.ShardRouter;
+import com.billialpha.discord.gamebot.games.GameRegistry;
+import discord4j.common.util.Snowflake;
+import discord4j.core.shard.GatewayBootstrap;
+import discord4j.core.shard.MemberRequestFilter;
+import discord4j.discordjson.json.ChannelData;
+import discord4j.discordjson.json.GuildData;
+import discord4j.discordjson.json.MemberData;
+import discord4j.discordjson.json.RoleData;
+import discord4j.gateway.GatewayOptions;
+import discord4j.gateway.intent.Intent;
+import discord4j.gateway.intent.IntentSet;
+import discord4j.store.api.mapping.MappingStoreService;
+import discord4j.store.api.noop.NoOpStoreService;
+import discord4j.store.api.primitive.ForwardingStoreService;
+import discord4j.store.api.service.StoreService;
+import discord4j.store.jdk.JdkStoreService;
+
+/**
+ * Gateway events and cached entities requested by the bot
+ *
+ * Only the intents of the bot commands and of the registered game types are requested. Entities are
+ * cached selectively: guilds, channels and roles, read to find answer channels and check permissions,
+ * and the members of registered players. Anything else (messages, presences, voice states, other members)
+ * is not kept, lookups of such entities fall back to REST.
+ */
+public class GatewayConfig {
+    /**
+     * Intents the bot always needs: guild channels, commands and reactions, and direct messages from players
+     */
+    public static final IntentSet BASE_INTENTS = IntentSet.of(Intent.GUILDS, Intent.GUILD_MESSAGES,
+            Intent.GUILD_MESSAGE_REACTIONS, Intent.DIRECT_MESSAGES, Intent.DIRECT_MESSAGE_REACTIONS);
+
+    private final IntentSet intents;
+    private final boolean slimStore;
+
+    /**
+     * @param intents The gateway intents to request
+     * @param slimStore Whether to cache only the entities read by games, instead of every entity
+     */
+    public GatewayConfig(IntentSet intents, boolean slimStore) {
+        this.intents = intents;
+        this.slimStore = slimStore;
+    }
+
+    /**
+     * Builds the configuration from the registered game types and the environment
+     *
+     * GAMEBOT_MEMBER_EVENTS=true requests the privileged member intent, so display names are invalidated
+     * as soon as a member changes, rather than when they expire. GAMEBOT_FULL_STORE=true restores the
+     * default entity store.
+     */
+    public static GatewayConfig fromEnv(GameRegistry registry) {
+        IntentSet intents = BASE_INTENTS.or(registry.getIntents());
+        if (Boolean.parseBoolean(System.getenv("GAMEBOT_MEMBER_EVENTS")))
+            intents = intents.or(IntentSet.of(Intent.GUILD_MEMBERS));
+        return new GatewayConfig(intents, !Boolean.parseBoolean(System.getenv("GAMEBOT_FULL_STORE")));
+    }
+
+    // --- Getters ---
+
+    public IntentSet getIntents() {
+        return intents;
+    }
+
+    public boolean isSlimStore() {
+        return slimStore;
+    }
+
+    // --- Methods ---
+
+    /**
+     * Applies the intents and the entity store to a gateway
+     * @param shards The games of this process, members are cached only while they play one
+     */
+    public <O extends GatewayOptions> GatewayBootstrap<O> apply(GatewayBootstrap<O> gateway, ShardRouter shards) {
+        gateway = gateway.setEnabledIntents(intents);
+        if (!slimStore) return gateway;
+        return gateway.setStoreService(buildStoreService(shards))
+                .setMemberRequestFilter(MemberRequestFilter.none()); // Never request the member list of guilds
+    }
+
+    /**
+     * Guilds, channels and roles are kept in stores keyed by long, which the JDK store only provides
+     * through a forwarding service: mapped directly, they would silently go to the no-op fallback
+     */
+    private static StoreService buildStoreService(ShardRouter shards) {
+        return MappingStoreService.create()
+                .setMappings(new ForwardingStoreService(new JdkStoreService()),
+                        GuildData.class, ChannelData.class, RoleData.class)
+                .setMapping(new PlayerMemberStoreService(id -> !shards.getByPlayer(Snowflake.of(id)).isEmpty()),
+                        MemberData.class)
+                .setFallback(new NoOpStoreService());
+    }
+
+    @Override
+    public String toString() {
+        return "intents="+intents+", store="+(slimStore ? "slim" : "full");
+    }
+}
@@ -0,0 +1,139 @@
+package com.billialpha.discord.gamebot.gateway;
+
+import discord4j.discordjson.json.MemberData;
+import discord4j.store.api.Store;
+import discord4j.store.api.primitive.LongObjStore;
+import discord4j.store.api.service.StoreService;
+import discord4j.store.api.util.LongLongTuple2;
+import discord4j.store.api.util.StoreContext;
+import discord4j.store.jdk.JdkStoreService;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Member store only keeping the members that play a game
+ *
+ * Members of a guild are keyed by (guild id, user id), other members are dropped on save
+ * and their lookups fall back to REST.
+ */
+public class PlayerMemberStoreService implements StoreService {
+    private final JdkStoreService delegate;
+    private final LongPredicate isPlayer;
+
+    /**
+     * @param isPlayer Whether a user id is registered in a game of this process
+     */
+    public PlayerMemberStoreService(LongPredicate isPlayer) {
+        this.delegate = new JdkStoreService();
+        this.isPlayer = isPlayer;
+    }
+
+    @Override
+    public boolean hasGenericStores() {
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<K>, V> Store<K, V> provideGenericStore(Class<K> keyClass, Class<V> valueClass) {
+        Store<K, V> store = delegate.provideGenericStore(keyClass, valueClass);
+        if (keyClass != LongLongTuple2.class || valueClass != MemberData.class) return store;
+        return (Store<K, V>) new PlayerStore((Store<LongLongTuple2, MemberData>) store);
+    }
+
+    @Override
+    public boolean hasLongObjStores() {
+        return false;
+    }
+
+    @Override
+    public <V> LongObjStore<V> provideLongObjStore(Class<V> valueClass) {
+        throw new UnsupportedOperationException("Members are only kept in generic stores");
+    }
+
+    @Override
+    public void init(StoreContext context) {
+        delegate.init(context);
+    }
+
+    @Override
+    public Mono<Void> dispose() {
+        return delegate.dispose();
+    }
+
+    // --- Subclasses ---
+
+    private class PlayerStore implements Store<LongLongTuple2, MemberData> {
+        private final Store<LongLongTuple2, MemberData> store;
+
+        PlayerStore(Store<LongLongTuple2, MemberData> store) {
+            this.store = store;
+        }
+
+        @Override
+        public Mono<Void> save(LongLongTuple2 key, MemberData value) {
+            if (!isPlayer.test(key.getT2())) return store.delete(key); // Player left every game
+            return store.save(key, value);
+        }
+
+        @Override
+        public Mono<Void> save(Publisher<Tuple2<LongLongTuple2, MemberData>> entries) {
+            // Bulk saves come from guild creation and member chunks, mostly members that don't play
+            return store.save(Flux.from(entries).filter(e -> isPlayer.test(e.getT1().getT2())));
+        }
+
+        @Override
+        public Mono<Void> delete(LongLongTuple2 key) {
+            return store.delete(key);
+        }
+
+        @Override
+        public Mono<Void> delete(Publisher<LongLongTuple2> keys) {
+            return store.delete(keys);
+        }
+
+        @Override
+        public Mono<Void> deleteInRange(LongLongTuple2 start, LongLongTuple2 end) {
+            return store.deleteInRange(start, end);
+        }
+
+        @Override
+        public Mono<Void> deleteAll() {
+            return store.deleteAll();
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            return store.invalidate();
+        }
+
+        @Override
+        public Mono<MemberData> find(LongLongTuple2 id) {
+            return store.find(id);
+        }
+
+        @Override
+        public Flux<MemberData> findInRange(LongLongTuple2 start, LongLongTuple2 end) {
+            return store.findInRange(start, end);
+        }
+
+        @Override
+        public Mono<Long> count() {
+            return store.count();
+        }
+
+        @Override
+        public Flux<LongLongTuple2> keys() {
+            return store.keys();
+        }
+
+        @Override
+        public Flux<MemberData> values() {
+            return store.values();
+        }
+    }
+}
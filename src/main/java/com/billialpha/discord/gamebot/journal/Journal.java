@@ -0,0 +1,276 @@
+package com.billialpha.discord.gamebot.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of records keyed by a long id (e.g. a game), stored in a local file
+ *
+ * Records are framed as {@code [length][type][key][payload][crc32]}. Appending only
+ * encodes the record, a background thread writes records in batches and syncs the file
+ * once per batch. When the file grows, it is replaced by a snapshot of the current state.
+ */
+public class Journal implements Closeable {
+    public static final Logger LOG = LoggerFactory.getLogger(Journal.class);
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int MAX_BATCH = 1024;
+
+    private final Path path;
+    private final long flushIntervalMillis;
+    private final long compactionThreshold;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread writer;
+    private volatile Snapshotter snapshotter;
+    private volatile boolean running;
+    private FileChannel channel; // Only accessed by the writer once started
+    private long compactAt;
+
+    /**
+     * @param flushInterval The maximum time a record waits before being synced to disk
+     * @param compactionThreshold The file size above which the journal is replaced by a snapshot
+     */
+    public Journal(String name, Path path, Duration flushInterval, long compactionThreshold) {
+        this.path = path;
+        this.flushIntervalMillis = flushInterval.toMillis();
+        this.compactionThreshold = compactionThreshold;
+        this.queue = new LinkedBlockingQueue<>();
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The number of records waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // --- Actions ---
+
+    /**
+     * Reads all records, stopping at the first incomplete or corrupted one which is then truncated
+     * Must be called before {@link #start(Snapshotter)}
+     */
+    public void replay(Handler handler) throws IOException {
+        if (!Files.exists(path)) return;
+        long valid = 0;
+        int count = 0;
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            CRC32 crc = new CRC32();
+            for (;;) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException ex) {
+                    break; // Clean end of journal
+                }
+                if (length < 9 || length > MAX_RECORD_SIZE) break; // Type and key at least
+                byte[] body = new byte[length];
+                int checksum;
+                try {
+                    in.readFully(body);
+                    checksum = in.readInt();
+                } catch (EOFException ex) {
+                    break; // Torn write
+                }
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) break;
+                ByteBuffer buf = ByteBuffer.wrap(body);
+                int type = buf.get();
+                long key = buf.getLong();
+                DataInput payload = new DataInputStream(new ByteArrayInputStream(body, 9, length - 9));
+                try {
+                    handler.handle(key, type, payload);
+                } catch (IOException | RuntimeException ex) {
+                    LOG.warn("Skipping unreadable journal record (type "+type+")", ex);
+                }
+                valid += 4 + length + 4;
+                count++;
+            }
+        }
+        if (valid < Files.size(path)) {
+            LOG.warn("Truncating corrupted journal tail at "+valid+" bytes");
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(valid);
+            }
+        }
+        LOG.info("Replayed "+count+" journal records");
+    }
+
+    /**
+     * Starts writing appended records
+     * @param snapshotter Writes the records needed to rebuild the current state, used for compaction
+     */
+    public void start(Snapshotter snapshotter) throws IOException {
+        this.snapshotter = snapshotter;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.compactAt = Math.max(compactionThreshold, 2 * channel.size());
+        this.running = true;
+        this.writer.start();
+    }
+
+    /**
+     * Queues a record, it is written and synced asynchronously
+     */
+    public void append(long key, int type, Payload payload) {
+        try {
+            queue.add(encode(key, type, payload));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes the remaining records and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) return;
+        running = false; // Not interrupting: it would close the file channel mid-write
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    byte[] first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, MAX_BATCH - 1);
+                        write(channel, batch);
+                        channel.force(false); // One sync per batch
+                        batch.clear();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (running && channel.size() > compactAt) compact();
+            }
+        } catch (IOException ex) {
+            LOG.error("Journal writer failed, records are no longer persisted: "+path, ex);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOG.warn("Failed to close journal", ex);
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with a snapshot of the current state
+     * Records queued meanwhile are written after the snapshot, so they are replayed on top of a state that
+     * may already include them: records must be idempotent, e.g. hold absolute values rather than deltas.
+     */
+    private void compact() throws IOException {
+        long before = channel.size();
+        Path tmp = path.resolveSibling(path.getFileName()+".tmp");
+        List<byte[]> records = new ArrayList<>();
+        snapshotter.snapshot((key, type, payload) -> records.add(encode(key, type, payload)));
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, records);
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Don't compact again before the journal grew past twice the snapshot
+        compactAt = Math.max(compactionThreshold, 2 * channel.size());
+        LOG.info("Compacted journal: "+before+" -> "+channel.size()+" bytes");
+    }
+
+    private static void write(FileChannel ch, List<byte[]> records) throws IOException {
+        int size = 0;
+        for (byte[] record : records) size += record.length;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (byte[] record : records) buf.put(record);
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static byte[] encode(long key, int type, Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Length placeholder
+        out.writeByte(type);
+        out.writeLong(key);
+        payload.write(out);
+        out.writeInt(0); // Checksum placeholder
+        byte[] record = bytes.toByteArray();
+        int length = record.length - 8;
+        if (length > MAX_RECORD_SIZE) throw new IOException("Journal record too large: "+length);
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, length);
+        ByteBuffer.wrap(record).putInt(0, length).putInt(record.length - 4, (int) crc.getValue());
+        return record;
+    }
+
+    // --- Subclasses ---
+
+    /**
+     * Writes the payload of a record
+     */
+    @FunctionalInterface
+    public interface Payload {
+        Payload EMPTY = out -> {};
+
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Receives records, either to replay them or to write them in a snapshot
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void append(long key, int type, Payload payload) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(long key, int type, DataInput payload) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Snapshotter {
+        void snapshot(Sink sink) throws IOException;
+    }
+}
@@ -0,0 +1,297 @@
+package com.billialpha.discord.gamebot.metrics;
+
+import io.netty.handler.codec.http.HttpMethod;
+import reactor.netty.http.client.HttpClientResponse;
+
+/**
+ * The instruments recorded by the bot, registered once so the hot paths only record
+ */
+public class BotMetrics {
+    // Bounds of latency buckets, in nanoseconds
+    private static final long[] LATENCY_BOUNDS = {
+            100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L,
+            50_000_000L, 100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L };
+    // Bounds of REST call count buckets
+    private static final long[] REST_CALLS_BOUNDS = { 1, 2, 3, 4, 5, 6, 8, 10, 15, 20, 30, 50, 100 };
+    // Bounds of answer time buckets, in milliseconds
+    private static final long[] ANSWER_TIME_BOUNDS = {
+            500, 1_000, 2_000, 3_000, 5_000, 7_500, 10_000, 15_000, 20_000, 30_000, 45_000, 60_000, 120_000 };
+
+    private final MetricRegistry registry;
+    public final MetricRegistry.Counter messagesReceived;
+    public final MetricRegistry.Counter messagesFiltered;
+    public final MetricRegistry.Counter messagesDispatched;
+    public final MetricRegistry.Counter reactionsReceived;
+    public final MetricRegistry.Counter reactionsFiltered;
+    public final MetricRegistry.Counter reactionsDispatched;
+    public final MetricRegistry.Counter messagesShedGuild;
+    public final MetricRegistry.Counter messagesShedUser;
+    public final MetricRegistry.Counter messagesShedOverload;
+    public final MetricRegistry.Counter reactionsShedGuild;
+    public final MetricRegistry.Counter reactionsShedUser;
+    public final MetricRegistry.Counter reactionsShedOverload;
+    public final MetricRegistry.Distribution messageLatency;
+    public final MetricRegistry.Distribution reactionLatency;
+    public final MetricRegistry.Distribution onStartLatency;
+    public final MetricRegistry.Distribution onGuildMessageLatency;
+    public final MetricRegistry.Distribution onDirectMessageLatency;
+    public final MetricRegistry.Distribution onReactionLatency;
+    public final MetricRegistry.Distribution onCommandLatency;
+    public final MetricRegistry.Distribution onExpireLatency;
+    public final MetricRegistry.Distribution onStopLatency;
+    public final MetricRegistry.Distribution onChannelsChangeLatency;
+    public final MetricRegistry.Distribution onRecoverLatency;
+    public final MetricRegistry.Counter roundsStarted;
+    public final MetricRegistry.Counter roundsFinished;
+    public final MetricRegistry.Counter answers;
+    public final MetricRegistry.Distribution answerTime;
+    public final MetricRegistry.Distribution answerQueueDelay;
+    public final MetricRegistry.Distribution fanOutSpread;
+    public final MetricRegistry.Distribution roundGap;
+    public final MetricRegistry.Distribution roundRestCalls;
+    // Instruments by route, an open addressing table replaced on each new route, looked up without locking
+    private volatile RouteMetrics[] routes;
+    private int routeCount;
+
+    public BotMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        String events = "gamebot_events_received_total";
+        String eventsHelp = "Gateway events received";
+        messagesReceived = registry.counter(events, eventsHelp, "type", "message");
+        reactionsReceived = registry.counter(events, eventsHelp, "type", "reaction");
+        String filtered = "gamebot_events_filtered_total";
+        String filteredHelp = "Gateway events ignored before reaching a game";
+        messagesFiltered = registry.counter(filtered, filteredHelp, "type", "message");
+        reactionsFiltered = registry.counter(filtered, filteredHelp, "type", "reaction");
+        String dispatched = "gamebot_events_dispatched_total";
+        String dispatchedHelp = "Gateway events delivered to a game, once per game";
+        messagesDispatched = registry.counter(dispatched, dispatchedHelp, "type", "message");
+        reactionsDispatched = registry.counter(dispatched, dispatchedHelp, "type", "reaction");
+        String shed = "gamebot_events_shed_total";
+        String shedHelp = "Gateway events dropped by admission control, over the rate of their guild or user, " +
+                "or not essential while overloaded";
+        messagesShedGuild = registry.counter(shed, shedHelp, "type", "message", "reason", "guild_rate");
+        messagesShedUser = registry.counter(shed, shedHelp, "type", "message", "reason", "user_rate");
+        messagesShedOverload = registry.counter(shed, shedHelp, "type", "message", "reason", "overload");
+        reactionsShedGuild = registry.counter(shed, shedHelp, "type", "reaction", "reason", "guild_rate");
+        reactionsShedUser = registry.counter(shed, shedHelp, "type", "reaction", "reason", "user_rate");
+        reactionsShedOverload = registry.counter(shed, shedHelp, "type", "reaction", "reason", "overload");
+        String latency = "gamebot_event_latency_seconds";
+        String latencyHelp = "Time from receiving a gateway event to completing its handling, including REST calls";
+        messageLatency = registry.distribution(latency, latencyHelp, LATENCY_BOUNDS, 1e-9, "type", "message");
+        reactionLatency = registry.distribution(latency, latencyHelp, LATENCY_BOUNDS, 1e-9, "type", "reaction");
+        onStartLatency = handlerLatency("onStart");
+        onGuildMessageLatency = handlerLatency("onGuildMessage");
+        onDirectMessageLatency = handlerLatency("onDirectMessage");
+        onReactionLatency = handlerLatency("onReaction");
+        onCommandLatency = handlerLatency("onCommand");
+        onExpireLatency = handlerLatency("onExpire");
+        onStopLatency = handlerLatency("onStop");
+        onChannelsChangeLatency = handlerLatency("onChannelsChange");
+        onRecoverLatency = handlerLatency("onRecover");
+        roundsStarted = registry.counter("gamebot_quizz_rounds_started_total", "Quiz rounds started");
+        roundsFinished = registry.counter("gamebot_quizz_rounds_finished_total", "Quiz rounds finished");
+        answers = registry.counter("gamebot_quizz_answers_total", "Quiz answers accepted");
+        answerTime = registry.distribution("gamebot_quizz_answer_time_seconds",
+                "Time from the start of a round to an answer", ANSWER_TIME_BOUNDS, 1e-3);
+        answerQueueDelay = registry.distribution("gamebot_quizz_answer_queue_delay_seconds",
+                "Time from receiving an answer from the gateway to recording it", LATENCY_BOUNDS, 1e-9);
+        fanOutSpread = registry.distribution("gamebot_quizz_fanout_spread_seconds",
+                "Time between the first and the last delivery of a question to the answer channels",
+                LATENCY_BOUNDS, 1e-9);
+        roundGap = registry.distribution("gamebot_quizz_round_gap_seconds",
+                "Time from the end of a deck round to the first delivery of the next question", LATENCY_BOUNDS, 1e-9);
+        roundRestCalls = registry.distribution("gamebot_quizz_round_rest_calls",
+                "REST calls made by a quiz round, from its question to its final embed", REST_CALLS_BOUNDS, 1);
+        routes = new RouteMetrics[64];
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    private MetricRegistry.Distribution handlerLatency(String callback) {
+        return registry.distribution("gamebot_handler_latency_seconds",
+                "Time from running a game handler to the completion of its result",
+                LATENCY_BOUNDS, 1e-9, "callback", callback);
+    }
+
+    /**
+     * Counts a REST response, by route template and status
+     */
+    public void onRestResponse(HttpClientResponse response) {
+        if (response.isWebsocket()) return; // Gateway connection
+        RouteMetrics metrics = route(response.method(), response.fullPath());
+        metrics.calls.increment();
+        if (response.status().code() == 429) metrics.rateLimited.increment();
+    }
+
+    /**
+     * Finds the instruments of the route of a request, without allocating once the route was seen
+     */
+    RouteMetrics route(HttpMethod method, String path) {
+        int hash = routeHash(method, path);
+        RouteMetrics[] table = routes;
+        for (int i = hash & (table.length - 1); table[i] != null; i = (i + 1) & (table.length - 1)) {
+            if (table[i].hash == hash && table[i].matches(method, path)) return table[i];
+        }
+        return addRoute(method, path, hash);
+    }
+
+    private synchronized RouteMetrics addRoute(HttpMethod method, String path, int hash) {
+        RouteMetrics[] table = routes;
+        for (int i = hash & (table.length - 1); table[i] != null; i = (i + 1) & (table.length - 1)) {
+            if (table[i].hash == hash && table[i].matches(method, path)) return table[i]; // Added concurrently
+        }
+        RouteMetrics metrics = new RouteMetrics(method, routeOf(path), hash);
+        RouteMetrics[] copy = new RouteMetrics[(routeCount + 1) * 2 > table.length ? table.length * 2 : table.length];
+        for (RouteMetrics route : table) {
+            if (route != null) insert(copy, route);
+        }
+        insert(copy, metrics);
+        routeCount++;
+        routes = copy;
+        return metrics;
+    }
+
+    private static void insert(RouteMetrics[] table, RouteMetrics metrics) {
+        int i = metrics.hash & (table.length - 1);
+        while (table[i] != null) i = (i + 1) & (table.length - 1);
+        table[i] = metrics;
+    }
+
+    /**
+     * @return The path with ids and emojis replaced by placeholders, e.g. {@code channels/{id}/messages}
+     */
+    static String routeOf(String path) {
+        StringBuilder route = new StringBuilder(path.length());
+        int end = routeEnd(path);
+        boolean emoji = false;
+        for (int start = routeStart(path); start < end; ) {
+            int next = segmentEnd(path, start, end);
+            if (route.length() > 0) route.append('/');
+            String placeholder = placeholder(path, start, next, emoji);
+            if (placeholder != null) route.append(placeholder);
+            else route.append(path, start, next);
+            emoji = isReactions(path, start, next);
+            start = next + 1;
+        }
+        return route.toString();
+    }
+
+    /**
+     * @return The hash of the method and of {@link #routeOf(String)}, computed without building the route
+     */
+    static int routeHash(HttpMethod method, String path) {
+        int hash = method.name().hashCode();
+        int end = routeEnd(path);
+        boolean emoji = false;
+        for (int start = routeStart(path); start < end; ) {
+            int next = segmentEnd(path, start, end);
+            hash = 31 * hash + '/';
+            String placeholder = placeholder(path, start, next, emoji);
+            if (placeholder != null) hash = 31 * hash + placeholder.hashCode();
+            else for (int i = start; i < next; i++) hash = 31 * hash + path.charAt(i);
+            emoji = isReactions(path, start, next);
+            start = next + 1;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return Whether a path has the given route template, compared without building its route
+     */
+    static boolean hasRoute(String path, String route) {
+        int end = routeEnd(path);
+        int pos = 0;
+        boolean emoji = false;
+        for (int start = routeStart(path); start < end; ) {
+            int next = segmentEnd(path, start, end);
+            if (pos > 0 && (pos >= route.length() || route.charAt(pos++) != '/')) return false;
+            String placeholder = placeholder(path, start, next, emoji);
+            if (placeholder != null) {
+                if (!route.startsWith(placeholder, pos)) return false;
+                pos += placeholder.length();
+            } else {
+                if (!route.regionMatches(pos, path, start, next - start)) return false;
+                pos += next - start;
+            }
+            emoji = isReactions(path, start, next);
+            start = next + 1;
+        }
+        return pos == route.length();
+    }
+
+    /**
+     * @return The start of the route in a path, past the api version and leading slashes
+     */
+    private static int routeStart(String path) {
+        int start = path.indexOf("api/");
+        if (start >= 0) { // Skip the api version
+            start = path.indexOf('/', start + 4);
+            return start < 0 ? path.length() : start + 1;
+        }
+        start = 0;
+        while (start < path.length() && path.charAt(start) == '/') start++;
+        return start;
+    }
+
+    /**
+     * @return The end of the route in a path, before the query and trailing slashes
+     */
+    private static int routeEnd(String path) {
+        int end = path.indexOf('?');
+        if (end < 0) end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') end--;
+        return end;
+    }
+
+    private static int segmentEnd(String path, int start, int end) {
+        int next = path.indexOf('/', start);
+        return next < 0 || next > end ? end : next;
+    }
+
+    /**
+     * @param emoji Whether the segment follows {@code reactions}
+     * @return The placeholder replacing a segment, null if it is kept
+     */
+    private static String placeholder(String path, int start, int end, boolean emoji) {
+        if (emoji) return "{emoji}";
+        if (isNumeric(path, start, end)) return "{id}";
+        return null;
+    }
+
+    private static boolean isReactions(String path, int start, int end) {
+        return end - start == 9 && path.startsWith("reactions", start);
+    }
+
+    private static boolean isNumeric(String str, int start, int end) {
+        if (start == end) return false;
+        for (int i = start; i < end; i++) {
+            if (str.charAt(i) < '0' || str.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    class RouteMetrics {
+        final HttpMethod method;
+        final String route;
+        final int hash;
+        final MetricRegistry.Counter calls;
+        final MetricRegistry.Counter rateLimited;
+
+        RouteMetrics(HttpMethod method, String route, int hash) {
+            this.method = method;
+            this.route = route;
+            this.hash = hash;
+            String label = method.name()+" "+route;
+            calls = registry.counter("gamebot_rest_requests_total", "REST responses received", "route", label);
+            rateLimited = registry.counter("gamebot_rest_rate_limited_total", "REST responses with status 429",
+                    "route", label);
+        }
+
+        boolean matches(HttpMethod method, String path) {
+            return this.method.equals(method) && hasRoute(path, route);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.billialpha.discord.gamebot.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the metrics of the bot, written in the Prometheus text format
+ *
+ * Metrics are registered once and kept by their users: recording only touches striped
+ * atomic cells, without locking nor allocating. Getting an existing metric returns it.
+ */
+public class MetricRegistry {
+    private final Map<String, Family> families;
+
+    public MetricRegistry() {
+        this.families = new ConcurrentSkipListMap<>();
+    }
+
+    // --- Getters ---
+
+    /**
+     * @param labels Pairs of label names and values
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").series.computeIfAbsent(labels(labels), l -> new Counter());
+    }
+
+    /**
+     * Registers a counter maintained elsewhere, read when scraped
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter").series.computeIfAbsent(labels(labels), l -> new Gauge(value));
+    }
+
+    /**
+     * Registers a gauge, read when scraped
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "gauge").series.computeIfAbsent(labels(labels), l -> new Gauge(value));
+    }
+
+    /**
+     * @param bounds The increasing upper bounds of the buckets, in recorded units
+     * @param scale The factor converting recorded units to exported units, e.g. 1e-9 for nanoseconds as seconds
+     */
+    public Distribution distribution(String name, String help, long[] bounds, double scale, String... labels) {
+        return (Distribution) family(name, help, "histogram").series
+                .computeIfAbsent(labels(labels), l -> new Distribution(bounds, scale));
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) throw new IllegalArgumentException("Metric "+name+" is a "+family.type);
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name and value pairs");
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) str.append(',');
+            str.append(labels[i]).append("=\"");
+            String value = labels[i+1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') str.append('\\').append(c);
+                else if (c == '\n') str.append("\\n");
+                else str.append(c);
+            }
+            str.append('"');
+        }
+        return str.toString();
+    }
+
+    // --- Actions ---
+
+    /**
+     * Writes the current value of every metric
+     */
+    public void write(StringBuilder out) {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> series : family.series.entrySet())
+                series.getValue().write(out, name, series.getKey());
+        }
+    }
+
+    // --- Subclasses ---
+
+    private static class Family {
+        final String help;
+        final String type;
+        final Map<String, Metric> series;
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+            this.series = new ConcurrentHashMap<>();
+        }
+    }
+
+    private interface Metric {
+        void write(StringBuilder out, String name, String labels);
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    public static class Counter implements Metric {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            writeSample(out, name, labels, Long.toString(value.sum()));
+        }
+    }
+
+    private static class Gauge implements Metric {
+        private final LongSupplier value;
+
+        Gauge(LongSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            writeSample(out, name, labels, Long.toString(value.getAsLong()));
+        }
+    }
+
+    /**
+     * A histogram with fixed buckets, cumulated since start
+     */
+    public static class Distribution implements Metric {
+        private final long[] bounds;
+        private final double scale;
+        private final LongAdder[] buckets; // The last one counts values above every bound
+        private final LongAdder sum;
+
+        Distribution(long[] bounds, double scale) {
+            this.bounds = bounds.clone();
+            this.scale = scale;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+            this.sum = new LongAdder();
+        }
+
+        public void record(long value) {
+            int low = 0, high = bounds.length;
+            while (low < high) { // First bound >= value
+                int mid = (low + high) >>> 1;
+                if (bounds[mid] < value) low = mid + 1;
+                else high = mid;
+            }
+            buckets[low].increment();
+            sum.add(value);
+        }
+
+        /**
+         * @return The number of values recorded since start
+         */
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) count += bucket.sum();
+            return count;
+        }
+
+        /**
+         * @return The sum of the values recorded since start, in recorded units
+         */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * @param q The quantile, between 0 and 1
+         * @return The upper bound of the bucket holding the quantile, {@link Long#MAX_VALUE} if above every bound,
+         *         0 if nothing was recorded
+         */
+        public long quantile(double q) {
+            long total = getCount();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long count = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                count += buckets[i].sum();
+                if (count >= rank) return bounds[i];
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            String sep = labels.isEmpty() ? "" : labels+",";
+            long count = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                count += buckets[i].sum();
+                writeSample(out, name+"_bucket", sep+"le=\""+(bounds[i] * scale)+"\"", Long.toString(count));
+            }
+            count += buckets[bounds.length].sum();
+            writeSample(out, name+"_bucket", sep+"le=\"+Inf\"", Long.toString(count));
+            writeSample(out, name+"_sum", labels, Double.toString(sum.sum() * scale));
+            writeSample(out, name+"_count", labels, Long.toString(count));
+        }
+    }
+}
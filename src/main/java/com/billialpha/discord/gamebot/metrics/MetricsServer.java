@@ -0,0 +1,59 @@
+package com.billialpha.discord.gamebot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics on a local HTTP endpoint, for a Prometheus scraper
+ */
+public class MetricsServer {
+    public static final Logger LOG = LoggerFactory.getLogger(MetricsServer.class);
+    private final MetricRegistry registry;
+    private final HttpServer server;
+
+    public MetricsServer(MetricRegistry registry, InetSocketAddress address) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext("/metrics", this::handle);
+        this.server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Serving metrics on http://"+server.getAddress().getHostString()+":"+
+                server.getAddress().getPort()+"/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder out = new StringBuilder(8192);
+            registry.write(out);
+            byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+}
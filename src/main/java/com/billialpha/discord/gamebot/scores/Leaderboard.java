@@ -0,0 +1,222 @@
+package com.billialpha.discord.gamebot.scores;
+
+import com.billialpha.discord.gamebot.journal.Journal;
+import discord4j.common.util.Snowflake;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Cumulative player scores of each guild, persisted in a local journal
+ *
+ * Only totals are kept in memory, however many answers were scored. Queries read an
+ * immutable ranking, rebuilt after scores changed, so they never block score updates.
+ *
+ * The journal holds the new total of a player on each update rather than the points added,
+ * so replaying a record again, e.g. one queued while a snapshot was taken, changes nothing.
+ */
+public class Leaderboard {
+    private static final int RECORD_POINTS = 1; // Points added, only found in older journals
+    private static final int RECORD_TOTAL = 2;
+    private final Journal journal;
+    private final Map<Snowflake, GuildScores> guilds;
+
+    public Leaderboard(Journal journal) {
+        this.journal = journal;
+        this.guilds = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Loads stored scores and starts persisting new ones
+     */
+    public void load() throws IOException {
+        journal.replay((guildId, type, in) -> {
+            GuildScores scores = getGuild(Snowflake.of(guildId));
+            switch (type) {
+                case RECORD_POINTS: scores.add(in.readLong(), in.readLong(), null); break;
+                case RECORD_TOTAL: scores.set(in.readLong(), in.readLong()); break;
+                default: throw new IOException("Unknown record type: "+type);
+            }
+        });
+        journal.start(sink -> {
+            // Compacted form: a single record holding the total of each player
+            for (Map.Entry<Snowflake, GuildScores> guild : guilds.entrySet()) {
+                for (Map.Entry<Long, Long> score : guild.getValue().totals.entrySet()) {
+                    sink.append(guild.getKey().asLong(), RECORD_TOTAL, out -> {
+                        out.writeLong(score.getKey());
+                        out.writeLong(score.getValue());
+                    });
+                }
+            }
+        });
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The best scores of a guild, best first
+     */
+    public List<Score> getTop(Snowflake guildId, int count) {
+        GuildScores scores = guilds.get(guildId);
+        if (scores == null) return Collections.emptyList();
+        Ranking ranking = scores.getRanking();
+        int size = Math.min(count, ranking.players.length);
+        List<Score> top = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            top.add(new Score(Snowflake.of(ranking.players[i]), ranking.points[i], ranking.rankOf(ranking.points[i])));
+        }
+        return top;
+    }
+
+    /**
+     * @return The score and rank of a player, empty if it never scored in this guild
+     */
+    public Optional<Score> getScore(Snowflake guildId, Snowflake playerId) {
+        GuildScores scores = guilds.get(guildId);
+        if (scores == null) return Optional.empty();
+        Ranking ranking = scores.getRanking();
+        int i = ranking.indexOf(playerId.asLong());
+        if (i < 0) return Optional.empty();
+        return Optional.of(new Score(playerId, ranking.points[i], ranking.rankOf(ranking.points[i])));
+    }
+
+    // --- Modifiers ---
+
+    public void addPoints(Snowflake guildId, Snowflake playerId, long points) {
+        if (points == 0) return;
+        getGuild(guildId).add(playerId.asLong(), points, total ->
+                journal.append(guildId.asLong(), RECORD_TOTAL, out -> {
+                    out.writeLong(playerId.asLong());
+                    out.writeLong(total);
+                }));
+    }
+
+    private GuildScores getGuild(Snowflake guildId) {
+        return guilds.computeIfAbsent(guildId, id -> new GuildScores());
+    }
+
+    // --- Subclasses ---
+
+    public static class Score {
+        private final Snowflake playerId;
+        private final long points;
+        private final int rank;
+
+        Score(Snowflake playerId, long points, int rank) {
+            this.playerId = playerId;
+            this.points = points;
+            this.rank = rank;
+        }
+
+        public Snowflake getPlayerId() {
+            return playerId;
+        }
+
+        public long getPoints() {
+            return points;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+
+    private static class GuildScores {
+        final Map<Long, Long> totals = new ConcurrentHashMap<>();
+        volatile Ranking ranking = Ranking.EMPTY;
+        volatile boolean dirty;
+
+        /**
+         * @param onTotal Receives the new total while the player is locked, so totals are journaled in order
+         */
+        void add(long playerId, long points, LongConsumer onTotal) {
+            totals.compute(playerId, (id, total) -> {
+                long updated = total == null ? points : total + points;
+                if (onTotal != null) onTotal.accept(updated);
+                return updated;
+            });
+            dirty = true;
+        }
+
+        void set(long playerId, long total) {
+            totals.put(playerId, total);
+            dirty = true;
+        }
+
+        Ranking getRanking() {
+            if (!dirty) return ranking;
+            synchronized (this) { // Only readers wait here, and only after an update
+                if (dirty) {
+                    dirty = false;
+                    ranking = Ranking.of(totals);
+                }
+                return ranking;
+            }
+        }
+    }
+
+    /**
+     * Players sorted by decreasing points, with an index by player id
+     */
+    private static class Ranking {
+        static final Ranking EMPTY = new Ranking(new long[0], new long[0]);
+        final long[] players;
+        final long[] points;
+        final long[] sortedIds; // Player ids in increasing order
+        final int[] positions; // Position in the ranking of each sorted id
+
+        private Ranking(long[] players, long[] points) {
+            this.players = players;
+            this.points = points;
+            Integer[] order = new Integer[players.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(players[a], players[b]));
+            this.sortedIds = new long[players.length];
+            this.positions = new int[players.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedIds[i] = players[order[i]];
+                positions[i] = order[i];
+            }
+        }
+
+        static Ranking of(Map<Long, Long> totals) {
+            List<Map.Entry<Long, Long>> entries = new ArrayList<>(totals.entrySet());
+            entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            long[] players = new long[entries.size()];
+            long[] points = new long[entries.size()];
+            for (int i = 0; i < players.length; i++) {
+                players[i] = entries.get(i).getKey();
+                points[i] = entries.get(i).getValue();
+            }
+            return new Ranking(players, points);
+        }
+
+        /**
+         * @return The position of a player in the ranking, or -1
+         */
+        int indexOf(long playerId) {
+            int i = Arrays.binarySearch(sortedIds, playerId);
+            return i < 0 ? -1 : positions[i];
+        }
+
+        /**
+         * @return The rank of a score: one plus the number of players with more points
+         */
+        int rankOf(long score) {
+            int low = 0, high = points.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (points[mid] > score) low = mid + 1;
+                else high = mid;
+            }
+            return low + 1;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.billialpha.discord.gamebot;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    @Test
+    void limitsEachUserToItsBurst() {
+        AdmissionControl admission = new AdmissionControl(1000, 1000, 0.001, 3, 100);
+        for (int i = 0; i < 3; i++) assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, 10, false));
+        assertEquals(AdmissionControl.Verdict.USER_LIMITED, admission.admit(1, 10, false));
+        assertEquals(AdmissionControl.Verdict.USER_LIMITED, admission.admit(1, 10, true));
+        assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, 11, false));
+    }
+
+    @Test
+    void limitsEachGuildToItsBurst() {
+        AdmissionControl admission = new AdmissionControl(0.001, 5, 1000, 1000, 100);
+        for (int user = 0; user < 5; user++) {
+            assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, user, false));
+        }
+        assertEquals(AdmissionControl.Verdict.GUILD_LIMITED, admission.admit(1, 5, false));
+        assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(2, 5, false));
+        assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(0, 5, false)); // Direct message
+    }
+
+    @Test
+    void essentialEventsBypassGuildBucket() {
+        AdmissionControl admission = new AdmissionControl(0.001, 1, 1000, 1000, 100);
+        assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, 1, false));
+        assertEquals(AdmissionControl.Verdict.GUILD_LIMITED, admission.admit(1, 2, false));
+        for (int user = 0; user < 100; user++) {
+            assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, user, true));
+        }
+    }
+
+    @Test
+    void refillsBuckets() throws InterruptedException {
+        AdmissionControl admission = new AdmissionControl(1000, 1000, 4, 1, 100); // One token every 250ms
+        assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, 1, false));
+        assertEquals(AdmissionControl.Verdict.USER_LIMITED, admission.admit(1, 1, false));
+        Thread.sleep(300);
+        assertEquals(AdmissionControl.Verdict.ADMITTED, admission.admit(1, 1, false));
+    }
+
+    @Test
+    void leavesOverloadOnceHalfCompleted() {
+        AdmissionControl admission = new AdmissionControl(1000, 1000, 1000, 1000, 4);
+        for (int i = 0; i < 4; i++) assertFalse(admission.onStart());
+        assertTrue(admission.onStart());
+        assertTrue(admission.isOverloaded());
+        assertFalse(admission.onStart()); // Already overloaded
+        for (int i = 0; i < 3; i++) assertFalse(admission.onEnd());
+        assertTrue(admission.onEnd());
+        assertFalse(admission.isOverloaded());
+        assertEquals(2, admission.getInFlight());
+    }
+}
@@ -0,0 +1,159 @@
+package com.billialpha.discord.gamebot;
+
+import com.billialpha.discord.gamebot.fake.FakeDiscord;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.GameRegistry;
+import com.billialpha.discord.gamebot.games.quizz.QuizzGame;
+import com.billialpha.discord.gamebot.gateway.GatewayConfig;
+import com.billialpha.discord.gamebot.journal.Journal;
+import com.billialpha.discord.gamebot.metrics.BotMetrics;
+import com.billialpha.discord.gamebot.metrics.MetricRegistry;
+import com.billialpha.discord.gamebot.scores.Leaderboard;
+import discord4j.common.ReactorResources;
+import discord4j.common.util.Snowflake;
+import discord4j.core.DiscordClient;
+import discord4j.core.DiscordClientBuilder;
+import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.guild.GuildCreateEvent;
+import discord4j.core.shard.ShardingStrategy;
+import discord4j.gateway.intent.Intent;
+import discord4j.gateway.intent.IntentSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a game bot against a {@link FakeDiscord}, built as {@link GameBot#main} does
+ */
+public class BotHarness implements AutoCloseable {
+    private final GameBot bot;
+    private final Journal journal;
+    private final Journal scores;
+
+    private BotHarness(GameBot bot, Journal journal, Journal scores) {
+        this.bot = bot;
+        this.journal = journal;
+        this.scores = scores;
+    }
+
+    /**
+     * Logs in the shards of a process and starts the bot once their guilds are loaded
+     * @param dir Directory of the game and score journals
+     */
+    public static BotHarness start(FakeDiscord discord, int shardCount, int[] shardIndices, AdmissionControl admission,
+                                   Path dir) {
+        return start(discord, shardCount, shardIndices, admission, dir, true);
+    }
+
+    /**
+     * @param slimStore Whether entities are cached by the slim store of {@link GatewayConfig}, or by the default one
+     */
+    public static BotHarness start(FakeDiscord discord, int shardCount, int[] shardIndices, AdmissionControl admission,
+                                   Path dir, boolean slimStore) {
+        GameRegistry registry = GameRegistry.get();
+        synchronized (registry) {
+            if (registry.get("quizz") == null)
+                registry.register("quizz", IntentSet.of(Intent.DIRECT_MESSAGES), QuizzGame::new);
+        }
+        BotMetrics metrics = new BotMetrics(new MetricRegistry());
+        MessageScheduler messageScheduler = new MessageScheduler();
+        DiscordClient initClient = DiscordClientBuilder.create(discord.getToken())
+                .setReactorResources(ReactorResources.builder()
+                        .httpClient(discord.httpClient()
+                                .doOnResponse((res, conn) -> {
+                                    metrics.onRestResponse(res);
+                                    messageScheduler.onResponse(res);
+                                }))
+                        .build())
+                .build();
+        ShardRouter shards = new ShardRouter(shardCount, shardIndices);
+        Set<Long> guilds = ConcurrentHashMap.newKeySet();
+        GatewayDiscordClient client = new GatewayConfig(GatewayConfig.BASE_INTENTS.or(registry.getIntents()), slimStore)
+                .apply(initClient.gateway(), shards)
+                .withEventDispatcher(events -> events.on(GuildCreateEvent.class)
+                        .doOnNext(event -> guilds.add(event.getGuild().getId().asLong())))
+                .setSharding(ShardingStrategy.builder().count(shardCount).indices(shardIndices).build())
+                .setAwaitConnections(true)
+                .login(discord::connect)
+                .block();
+        awaitGuilds(guilds, discord.getGuilds().stream().map(g -> g.id).filter(id -> shards.isLocal(Snowflake.of(id)))
+                .collect(Collectors.toList()));
+
+        Journal journal = new Journal("game-journal", dir.resolve("gamebot.journal"), Duration.ofMillis(50),
+                16 * 1024 * 1024);
+        Journal scores = new Journal("score-journal", dir.resolve("gamebot.scores"), Duration.ofMillis(200),
+                4 * 1024 * 1024);
+        GameBot bot = new GameBot(client, shards, metrics, messageScheduler, admission, journal,
+                new Leaderboard(scores), Duration.ofMinutes(30), Duration.ofHours(2));
+        bot.start().block();
+        return new BotHarness(bot, journal, scores);
+    }
+
+    /**
+     * Admission control letting every event through
+     */
+    public static AdmissionControl unlimited() {
+        return new AdmissionControl(1e6, 1_000_000, 1e6, 1_000_000, 1_000_000);
+    }
+
+    /**
+     * Waits for guilds to be cached, their creation events are dispatched once they are stored
+     * @param guilds The guilds whose creation event was received
+     */
+    private static void awaitGuilds(Set<Long> guilds, List<Long> guildIds) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!guilds.containsAll(guildIds)) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Guilds not received");
+            sleep();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // --- Getters ---
+
+    public GameBot getBot() {
+        return bot;
+    }
+
+    /**
+     * Waits for a game to own a message of the bot: Discord may show it, and users react to it,
+     * before the bot got the reply to its REST call, until then those reactions are ignored
+     * @return The game owning the message
+     */
+    public GameInstance awaitGame(long channelId, long messageId) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        Snowflake channel = Snowflake.of(channelId);
+        Snowflake message = Snowflake.of(messageId);
+        while (true) {
+            for (ShardRouter.Shard shard : bot.getShards().getLocalShards()) {
+                GameInstance game = shard.getIndex().getByMessage(channel, message);
+                if (game != null) return game;
+            }
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Message not owned by a game");
+            sleep();
+        }
+    }
+
+    // --- Actions ---
+
+    @Override
+    public void close() throws IOException {
+        bot.client.logout().block();
+        bot.getTimers().stop();
+        journal.close();
+        scores.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.billialpha.discord.gamebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MessageSchedulerTest {
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void waitsForResetOnceOutOfQuota() {
+        MessageScheduler scheduler = new MessageScheduler();
+        long now = System.nanoTime();
+        assertEquals(0, scheduler.reserve(1, now));
+        scheduler.update(1, 1, 2, 5 * SECOND, now);
+        assertEquals(0, scheduler.reserve(1, now));
+        assertEquals(5 * SECOND - 1, scheduler.reserve(1, now + 1));
+    }
+
+    @Test
+    void spreadsBurstOverLaterWindows() {
+        MessageScheduler scheduler = new MessageScheduler();
+        long now = System.nanoTime();
+        scheduler.update(1, 0, 2, 5 * SECOND, now);
+        assertEquals(5 * SECOND, scheduler.reserve(1, now));
+        assertEquals(5 * SECOND, scheduler.reserve(1, now));
+        assertEquals(10 * SECOND, scheduler.reserve(1, now));
+        scheduler.update(1, 1, 2, 5 * SECOND, now); // Response from the current window, already counted
+        assertEquals(10 * SECOND, scheduler.reserve(1, now));
+        assertEquals(15 * SECOND, scheduler.reserve(1, now));
+    }
+
+    @Test
+    void countsResponsesOfTheReservedWindow() {
+        MessageScheduler scheduler = new MessageScheduler();
+        long now = System.nanoTime();
+        scheduler.update(1, 3, 4, 5 * SECOND, now);
+        assertEquals(0, scheduler.reserve(1, now));
+        scheduler.update(1, 1, 4, 5 * SECOND - 100, now + 100); // Another client sent to the channel
+        assertEquals(0, scheduler.reserve(1, now + 200));
+        assertEquals(5 * SECOND - 200, scheduler.reserve(1, now + 200));
+    }
+
+    @Test
+    void forgetsResetBuckets() {
+        MessageScheduler scheduler = new MessageScheduler();
+        long now = System.nanoTime();
+        for (long channel = 0; channel < 100; channel++) scheduler.update(channel, 4, 5, 5 * SECOND, now);
+        assertEquals(100, scheduler.getBucketCount());
+        assertEquals(0, scheduler.reserve(0, now + 5 * SECOND));
+        assertEquals(99, scheduler.getBucketCount());
+        scheduler.update(100, 4, 5, 5 * SECOND, now + Duration.ofMinutes(2).toNanos());
+        assertEquals(1, scheduler.getBucketCount());
+    }
+}
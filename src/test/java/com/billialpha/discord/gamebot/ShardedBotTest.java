@@ -0,0 +1,128 @@
+package com.billialpha.discord.gamebot;
+
+import com.billialpha.discord.gamebot.fake.FakeDiscord;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeChannel;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeGuild;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeUser;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.billialpha.discord.gamebot.games.quizz.QuizzGame;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import discord4j.common.util.Snowflake;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedBotTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path dir;
+
+    private FakeDiscord discord;
+    private FakeUser host;
+
+    @BeforeEach
+    void setUp() {
+        discord = new FakeDiscord();
+        host = discord.addUser("Hôte");
+    }
+
+    @AfterEach
+    void tearDown() {
+        discord.close();
+    }
+
+    private static ObjectNode awaitPost(FakeDiscord discord, FakeChannel channel, String prefix)
+            throws InterruptedException {
+        return discord.awaitMessage(m -> m.get("channel_id").asLong() == channel.id
+                && m.get("content").asText().startsWith(prefix), TIMEOUT);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void ignoresGuildsOfOtherShards() throws Exception {
+        FakeGuild remote = discord.addGuild("Remote", host, 0, 4);
+        FakeGuild local = discord.addGuild("Local", host, 3, 4);
+        try (BotHarness harness = BotHarness.start(discord, 4, new int[] { 1, 3 }, BotHarness.unlimited(), dir)) {
+            discord.sendMessage(remote.getMainChannel(), host, "%status");
+            discord.sendMessage(local.getMainChannel(), host, "%status");
+            assertNotNull(awaitPost(discord, local.getMainChannel(), "*Aucune partie en cours.*"));
+            Thread.sleep(200);
+            assertNull(discord.awaitMessage(m -> m.get("channel_id").asLong() == remote.getMainChannel().id,
+                    Duration.ZERO));
+        }
+    }
+
+    @Test
+    void refusesDirectMessageGamesWithoutShardZero() throws Exception {
+        FakeGuild guild = discord.addGuild("Local", host, 1, 2);
+        try (BotHarness harness = BotHarness.start(discord, 2, new int[] { 1 }, BotHarness.unlimited(), dir)) {
+            discord.sendMessage(guild.getMainChannel(), host, "%start quizz");
+            assertNotNull(awaitPost(discord, guild.getMainChannel(), "*Ce jeu n'est pas disponible"));
+            assertTrue(harness.getBot().getShards().getInstances().isEmpty());
+        }
+    }
+
+    @Test
+    void playsQuizzOnAnotherShardThanDirectMessages() throws Exception {
+        FakeGuild guild = discord.addGuild("Local", host, 1, 2);
+        FakeChannel category = guild.addCategory(QuizzGame.DEFAULT_CATEGORY);
+        FakeChannel answers = guild.addTextChannel("equipe-1", category);
+        FakeUser alice = discord.addUser("Alice");
+        FakeUser bob = discord.addUser("Bob");
+        guild.addMember(alice);
+        guild.addMember(bob);
+        FakeChannel main = guild.getMainChannel();
+        try (BotHarness harness = BotHarness.start(discord, 2, new int[] { 0, 1 }, BotHarness.unlimited(), dir)) {
+            GameBot bot = harness.getBot();
+            discord.sendMessage(main, host, "%start quizz");
+            ObjectNode lobby = awaitPost(discord, main, "**On démarre un quizz !**");
+            assertNotNull(lobby);
+            GameInstance game = harness.awaitGame(main.id, lobby.get("id").asLong());
+            assertEquals(Set.of(game), bot.getShards().getShard(Snowflake.of(guild.id)).getIndex()
+                    .getRunning(Snowflake.of(guild.id)));
+
+            discord.react(main.id, lobby.get("id").asLong(), alice, "✅");
+            discord.react(main.id, lobby.get("id").asLong(), bob, "✅");
+            await(() -> game.getPlayers().size() == 3);
+            discord.react(main.id, lobby.get("id").asLong(), host, "✅");
+            assertNotNull(discord.awaitMessage(m -> m.get("content").asText().startsWith("Dès que vous êtes prêt"),
+                    TIMEOUT));
+
+            // The question is sent by direct message, received by shard 0
+            discord.sendDirectMessage(host, "Capitale de la France ?\n=Paris");
+            assertNotNull(awaitPost(discord, answers, ""));
+            ObjectNode round = discord.awaitMessage(m -> m.get("channel_id").asLong() == main.id
+                    && m.get("embeds").size() > 0, TIMEOUT);
+            assertNotNull(round);
+            harness.awaitGame(main.id, round.get("id").asLong());
+            discord.sendMessage(main, alice, discord.getSelf().mention()+" paris");
+            discord.sendMessage(main, bob, discord.getSelf().mention()+" Lyon");
+            Thread.sleep(200);
+            discord.react(main.id, round.get("id").asLong(), host, "✅");
+
+            Snowflake guildId = Snowflake.of(guild.id);
+            await(() -> bot.getLeaderboard().getScore(guildId, Snowflake.of(alice.id)).isPresent());
+            assertTrue(bot.getLeaderboard().getScore(guildId, Snowflake.of(bob.id)).isEmpty());
+            assertTrue(discord.getRest().getCount("POST /channels/{id}/messages") >= 4);
+        }
+    }
+}
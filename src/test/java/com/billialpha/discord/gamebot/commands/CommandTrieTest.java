@@ -0,0 +1,80 @@
+package com.billialpha.discord.gamebot.commands;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CommandTrieTest {
+
+    private static CommandTrie<String> newTrie() {
+        CommandTrie<String> trie = new CommandTrie<>();
+        trie.put("start", "START");
+        trie.put("stop", "STOP");
+        trie.put("status", "STATUS");
+        trie.put("classement", "LEADERBOARD");
+        trie.put("leaderboard", "LEADERBOARD");
+        trie.put("quizz", "QUIZZ");
+        return trie;
+    }
+
+    @Test
+    void resolvesExactNames() {
+        CommandTrie<String> trie = newTrie();
+        assertEquals("START", trie.resolve("start"));
+        assertEquals("STOP", trie.resolve("stop"));
+        assertEquals("STATUS", trie.resolve("status"));
+    }
+
+    @Test
+    void resolvesUnambiguousPrefixes() {
+        CommandTrie<String> trie = newTrie();
+        assertEquals("STOP", trie.resolve("sto"));
+        assertEquals("STATUS", trie.resolve("statu"));
+        assertEquals("QUIZZ", trie.resolve("q"));
+        assertNull(trie.resolve("st")); // start, stop and status
+        assertNull(trie.resolve("sta")); // start and status
+    }
+
+    @Test
+    void treatsAliasesAsOneCommand() {
+        CommandTrie<String> trie = newTrie();
+        assertEquals("LEADERBOARD", trie.resolve("class"));
+        assertEquals("LEADERBOARD", trie.resolve("lead"));
+    }
+
+    @Test
+    void ignoresCase() {
+        CommandTrie<String> trie = newTrie();
+        assertEquals("START", trie.resolve("StArT"));
+        assertEquals("QUIZZ", trie.resolve("QUI"));
+    }
+
+    @Test
+    void rejectsUnknownNames() {
+        CommandTrie<String> trie = newTrie();
+        assertNull(trie.resolve("starting"));
+        assertNull(trie.resolve("x"));
+        assertNull(trie.resolve(""));
+    }
+
+    @Test
+    void resolvesSliceOfMessage() {
+        CommandTrie<String> trie = newTrie();
+        String msg = "%stop quizz";
+        assertEquals("STOP", trie.resolve(msg, 1, 5));
+        assertEquals("QUIZZ", trie.resolve(msg, 6, msg.length()));
+        assertNull(trie.resolve(msg, 5, 5));
+    }
+
+    @Test
+    void exactNameWinsOverLongerNames() {
+        CommandTrie<String> trie = new CommandTrie<>();
+        trie.put("go", "GO");
+        trie.put("gone", "GONE");
+        assertEquals("GO", trie.resolve("go"));
+        assertEquals("GONE", trie.resolve("gon"));
+        assertThrows(IllegalArgumentException.class, () -> trie.put("", "EMPTY"));
+    }
+}
@@ -0,0 +1,708 @@
+package com.billialpha.discord.gamebot.fake;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import discord4j.gateway.GatewayClient;
+import discord4j.gateway.GatewayOptions;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.resolver.AbstractAddressResolver;
+import io.netty.resolver.AddressResolver;
+import io.netty.resolver.AddressResolverGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * In-process stand-in for Discord, to run a bot without network access
+ *
+ * It holds guilds, channels and users, serves the REST API over TLS on a local port, and connects
+ * the shards of a client through {@link FakeGateway}s. Tests and benchmarks act as users, sending
+ * messages and reactions, and observe the messages posted by the bot and the REST calls it made.
+ *
+ * Events of a guild are only delivered to the gateway of its shard, direct messages to shard 0.
+ */
+public class FakeDiscord implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(FakeDiscord.class);
+    static final ObjectMapper JSON = new ObjectMapper();
+    private static final long DISCORD_EPOCH = 1420070400000L;
+    private static final String API_PREFIX = "/api/v6/";
+
+    private final FakeUser self;
+    private final Map<Long, FakeGuild> guilds;
+    private final Map<Long, FakeChannel> channels;
+    private final Map<Long, FakeUser> users;
+    private final Map<Long, FakeChannel> directChannels;
+    private final Map<Long, ObjectNode> messages;
+    private final Map<Integer, FakeGateway> gateways;
+    private final List<Consumer<ObjectNode>> listeners;
+    private final AtomicLong sequence;
+    private final RestRecorder rest;
+    private final Duration restLatency;
+    private final SelfSignedCertificate certificate;
+    private final DisposableServer server;
+
+    /**
+     * @param restLatency Time taken to answer each REST call
+     */
+    public FakeDiscord(Duration restLatency) {
+        this.guilds = new ConcurrentHashMap<>();
+        this.channels = new ConcurrentHashMap<>();
+        this.users = new ConcurrentHashMap<>();
+        this.directChannels = new ConcurrentHashMap<>();
+        this.messages = new ConcurrentHashMap<>();
+        this.gateways = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.sequence = new AtomicLong();
+        this.rest = new RestRecorder();
+        this.restLatency = restLatency;
+        this.self = addUser("GameBot");
+        try {
+            this.certificate = new SelfSignedCertificate("discord.com");
+        } catch (CertificateException ex) {
+            throw new IllegalStateException("Cannot create certificate", ex);
+        }
+        SslContextBuilder ssl = SslContextBuilder.forServer(certificate.certificate(), certificate.privateKey());
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .secure(spec -> spec.sslContext(ssl))
+                .handle(this::handle)
+                .bindNow();
+    }
+
+    public FakeDiscord() {
+        this(Duration.ZERO);
+    }
+
+    // --- Getters ---
+
+    /**
+     * @return The bot user
+     */
+    public FakeUser getSelf() {
+        return self;
+    }
+
+    /**
+     * @return A token identifying the bot user
+     */
+    public String getToken() {
+        String id = Base64.getEncoder().encodeToString(Long.toString(self.id).getBytes(StandardCharsets.UTF_8));
+        return id+".fake.token";
+    }
+
+    public RestRecorder getRest() {
+        return rest;
+    }
+
+    public Collection<FakeGuild> getGuilds() {
+        return Collections.unmodifiableCollection(guilds.values());
+    }
+
+    /**
+     * @return The guilds sent to the connected shards
+     */
+    public long getConnectedGuildCount() {
+        return guilds.values().stream().filter(g -> gatewayOf(g.id) != null).count();
+    }
+
+    /**
+     * @return A message by id, as last posted or edited
+     */
+    public ObjectNode getMessage(long messageId) {
+        return messages.get(messageId);
+    }
+
+    /**
+     * Client sending REST calls to this Discord
+     */
+    public HttpClient httpClient() {
+        InetSocketAddress address = server.address();
+        SslContextBuilder ssl = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE);
+        return HttpClient.create()
+                .compress(true)
+                .secure(spec -> spec.sslContext(ssl))
+                .tcpConfiguration(tcp -> tcp.resolver(new LocalResolverGroup(address)));
+    }
+
+    /**
+     * Connects a shard, to be used as gateway client factory at login
+     */
+    public GatewayClient connect(GatewayOptions options) {
+        return new FakeGateway(this, options);
+    }
+
+    // --- Modifiers ---
+
+    public FakeUser addUser(String name) {
+        FakeUser user = new FakeUser(nextId(), name);
+        users.put(user.id, user);
+        return user;
+    }
+
+    /**
+     * Creates a guild with a "général" text channel, its shard is fixed by its id
+     * @param shard The shard receiving the events of the guild
+     * @param shardCount The number of shards of the bot
+     */
+    public FakeGuild addGuild(String name, FakeUser owner, int shard, int shardCount) {
+        long timestamp = System.currentTimeMillis() - DISCORD_EPOCH;
+        timestamp = timestamp - timestamp % shardCount + shard;
+        FakeGuild guild = new FakeGuild(this, (timestamp << 22) | (sequence.incrementAndGet() & 0x3FFFFF), name, owner);
+        guilds.put(guild.id, guild);
+        guild.addMember(owner);
+        guild.addMember(self);
+        guild.addTextChannel("général", null);
+        return guild;
+    }
+
+    /**
+     * Forgets the messages sent until now, so they are not counted in the heap of the bot
+     */
+    public void clearMessages() {
+        messages.clear();
+    }
+
+    /**
+     * Calls a listener with every message posted or edited by the bot
+     */
+    public void addListener(Consumer<ObjectNode> listener) {
+        listeners.add(listener);
+    }
+
+    // --- Actions ---
+
+    /**
+     * Sends a message as a user, to a guild channel or to the direct channel of the user with the bot
+     * @return The message id
+     */
+    public long sendMessage(FakeChannel channel, FakeUser author, String content) {
+        ObjectNode msg = message(nextId(), channel, author, content);
+        messages.put(msg.get("id").asLong(), msg);
+        ObjectNode event = msg.deepCopy();
+        if (channel.guildId != 0) event.set("member", member(author, false));
+        dispatch(channel.guildId, "MESSAGE_CREATE", event);
+        return msg.get("id").asLong();
+    }
+
+    public long sendDirectMessage(FakeUser author, String content) {
+        return sendMessage(getDirectChannel(author), author, content);
+    }
+
+    /**
+     * Adds a reaction as a user
+     */
+    public void react(long channelId, long messageId, FakeUser user, String emoji) {
+        FakeChannel channel = channels.get(channelId);
+        ObjectNode event = JSON.createObjectNode();
+        event.put("user_id", Long.toString(user.id));
+        event.put("channel_id", Long.toString(channelId));
+        event.put("message_id", Long.toString(messageId));
+        if (channel.guildId != 0) {
+            event.put("guild_id", Long.toString(channel.guildId));
+            event.set("member", member(user, true));
+        }
+        ObjectNode emojiNode = event.putObject("emoji");
+        emojiNode.putNull("id");
+        emojiNode.put("name", emoji);
+        dispatch(channel.guildId, "MESSAGE_REACTION_ADD", event);
+    }
+
+    /**
+     * Waits for a message posted or edited by the bot
+     * @return The first message matching, or null on timeout
+     */
+    public ObjectNode awaitMessage(Predicate<ObjectNode> filter, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        do {
+            for (ObjectNode msg : messages.values()) {
+                if (msg.get("author").get("id").asLong() == self.id && filter.test(msg)) return msg;
+            }
+            Thread.sleep(10);
+        } while (System.nanoTime() < deadline);
+        return null;
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        certificate.delete();
+    }
+
+    // --- Gateway ---
+
+    void onConnect(FakeGateway gateway) {
+        int index = gateway.getShardInfo().getIndex();
+        gateways.put(index, gateway);
+        List<FakeGuild> shardGuilds = new ArrayList<>();
+        for (FakeGuild guild : guilds.values()) {
+            if (shardOf(guild.id, gateway.getShardCount()) == index) shardGuilds.add(guild);
+        }
+        ObjectNode ready = JSON.createObjectNode();
+        ready.put("v", 6);
+        ready.set("user", user(self));
+        ready.putArray("private_channels");
+        ArrayNode readyGuilds = ready.putArray("guilds");
+        for (FakeGuild guild : shardGuilds) {
+            readyGuilds.addObject().put("id", Long.toString(guild.id)).put("unavailable", true);
+        }
+        ready.put("session_id", gateway.getSessionId());
+        ready.putArray("_trace");
+        ready.putArray("shard").add(index).add(gateway.getShardCount());
+        ready.putObject("application").put("id", Long.toString(self.id)).put("flags", 0);
+        gateway.send("READY", ready);
+        for (FakeGuild guild : shardGuilds) gateway.send("GUILD_CREATE", guild.toCreateJson());
+    }
+
+    void onClose(FakeGateway gateway) {
+        gateways.remove(gateway.getShardInfo().getIndex(), gateway);
+    }
+
+    /**
+     * Sends an event to the shard of a guild, dropped if that shard is not connected
+     * @param guildId The guild of the event, 0 for direct messages
+     */
+    private void dispatch(long guildId, String type, ObjectNode event) {
+        FakeGateway gateway = gatewayOf(guildId);
+        if (gateway == null) {
+            LOG.debug("No shard connected for guild "+guildId+", dropping "+type);
+            return;
+        }
+        gateway.send(type, event);
+    }
+
+    private FakeGateway gatewayOf(long guildId) {
+        for (FakeGateway gateway : gateways.values()) {
+            if (gateway.getShardInfo().getIndex() == shardOf(guildId, gateway.getShardCount())) return gateway;
+        }
+        return null;
+    }
+
+    private static int shardOf(long guildId, int shardCount) {
+        return (int) ((guildId >> 22) % shardCount);
+    }
+
+    // --- REST ---
+
+    private Mono<Void> handle(HttpServerRequest req, HttpServerResponse res) {
+        String uri = req.uri();
+        int query = uri.indexOf('?');
+        if (query >= 0) uri = uri.substring(0, query);
+        String[] path = uri.startsWith(API_PREFIX) ? uri.substring(API_PREFIX.length()).split("/") : new String[0];
+        String method = req.method().name();
+        rest.record(method, path);
+        return req.receive().aggregate().asString(StandardCharsets.UTF_8).defaultIfEmpty("")
+                .map(body -> {
+                    try {
+                        return route(method, path, body);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                })
+                .onErrorResume(err -> {
+                    LOG.error("Fake REST call failed: "+method+" "+req.uri(), err);
+                    return Mono.just(error(500, "Internal error"));
+                })
+                .delayElement(restLatency)
+                .flatMap(reply -> reply.body == null ? res.status(reply.status).send()
+                        : res.status(reply.status)
+                        .header("Content-Type", "application/json")
+                        .sendString(Mono.just(reply.body.toString()), StandardCharsets.UTF_8)
+                        .then());
+    }
+
+    private Reply route(String method, String[] path, String body) throws IOException {
+        if (path.length == 0) return notFound(method, path);
+        switch (path[0]) {
+            case "gateway":
+                ObjectNode gateway = JSON.createObjectNode().put("url", "wss://gateway.discord.gg");
+                if (path.length > 1) {
+                    gateway.put("shards", 1);
+                    gateway.putObject("session_start_limit").put("total", 1000).put("remaining", 1000)
+                            .put("reset_after", 0).put("max_concurrency", 1);
+                }
+                return ok(gateway);
+            case "users":
+                if (path.length == 3 && method.equals("POST") && path[2].equals("channels")) {
+                    FakeUser recipient = users.get(JSON.readTree(body).get("recipient_id").asLong());
+                    if (recipient == null) return error(404, "Unknown User");
+                    return ok(getDirectChannel(recipient).toJson());
+                }
+                if (path.length == 2 && method.equals("GET")) {
+                    FakeUser user = path[1].equals("@me") ? self : users.get(Long.parseLong(path[1]));
+                    return user == null ? error(404, "Unknown User") : ok(user(user));
+                }
+                break;
+            case "channels":
+                FakeChannel channel = channels.get(Long.parseLong(path[1]));
+                if (channel == null) return error(404, "Unknown Channel");
+                if (path.length == 2 && method.equals("GET")) return ok(channel.toJson());
+                if (path.length == 3 && path[2].equals("messages") && method.equals("POST"))
+                    return ok(post(channel, JSON.readTree(body)));
+                if (path.length == 4 && path[2].equals("messages")) {
+                    ObjectNode msg = messages.get(Long.parseLong(path[3]));
+                    if (msg == null) return error(404, "Unknown Message");
+                    if (method.equals("GET")) return ok(msg);
+                    if (method.equals("PATCH")) return ok(edit(msg, JSON.readTree(body)));
+                    if (method.equals("DELETE")) return noContent();
+                }
+                if (path.length >= 5 && path[4].equals("reactions")) {
+                    return method.equals("GET") ? ok(JSON.createArrayNode()) : noContent();
+                }
+                break;
+            case "guilds":
+                FakeGuild guild = guilds.get(Long.parseLong(path[1]));
+                if (guild == null) return error(404, "Unknown Guild");
+                if (path.length == 2 && method.equals("GET")) return ok(guild.toJson());
+                if (path.length == 3 && path[2].equals("channels")) {
+                    ArrayNode list = JSON.createArrayNode();
+                    for (FakeChannel chan : guild.channels) list.add(chan.toJson());
+                    return ok(list);
+                }
+                if (path.length == 3 && path[2].equals("roles"))
+                    return ok(JSON.createArrayNode().add(guild.everyoneRole()));
+                if (path.length == 4 && path[2].equals("members")) {
+                    FakeUser user = users.get(Long.parseLong(path[3]));
+                    if (user == null || !guild.members.contains(user.id)) return error(404, "Unknown Member");
+                    return ok(member(user, true));
+                }
+                break;
+        }
+        return notFound(method, path);
+    }
+
+    private ObjectNode post(FakeChannel channel, JsonNode request) {
+        ObjectNode msg = message(nextId(), channel, self, request.path("content").asText(""));
+        if (request.hasNonNull("embed")) msg.putArray("embeds").add(request.get("embed"));
+        messages.put(msg.get("id").asLong(), msg);
+        for (Consumer<ObjectNode> listener : listeners) listener.accept(msg);
+        dispatch(channel.guildId, "MESSAGE_CREATE", msg.deepCopy()); // Bots receive their own messages
+        return msg;
+    }
+
+    /**
+     * Messages are never modified once stored, an edit replaces the message by a copy
+     */
+    private ObjectNode edit(ObjectNode previous, JsonNode request) {
+        ObjectNode msg = previous.deepCopy();
+        if (request.has("content")) msg.put("content", request.path("content").asText(""));
+        if (request.has("embed")) {
+            ArrayNode embeds = msg.putArray("embeds");
+            if (!request.get("embed").isNull()) embeds.add(request.get("embed"));
+        }
+        msg.put("edited_timestamp", Instant.now().toString());
+        messages.put(msg.get("id").asLong(), msg);
+        for (Consumer<ObjectNode> listener : listeners) listener.accept(msg);
+        return msg;
+    }
+
+    private Reply notFound(String method, String[] path) {
+        LOG.warn("Fake REST route not implemented: "+RestRecorder.route(method, path));
+        return error(404, "Unknown route");
+    }
+
+    private static Reply ok(JsonNode body) {
+        return new Reply(200, body);
+    }
+
+    private static Reply noContent() {
+        return new Reply(204, null);
+    }
+
+    private static Reply error(int status, String message) {
+        return new Reply(status, JSON.createObjectNode().put("message", message).put("code", 0));
+    }
+
+    // --- JSON ---
+
+    private long nextId() {
+        return ((System.currentTimeMillis() - DISCORD_EPOCH) << 22) | (sequence.incrementAndGet() & 0x3FFFFF);
+    }
+
+    FakeChannel getDirectChannel(FakeUser user) {
+        return directChannels.computeIfAbsent(user.id, id -> {
+            FakeChannel channel = new FakeChannel(nextId(), 0, 1, null, 0);
+            channel.recipient = user;
+            channels.put(channel.id, channel);
+            return channel;
+        });
+    }
+
+    private static ObjectNode message(long id, FakeChannel channel, FakeUser author, String content) {
+        ObjectNode msg = JSON.createObjectNode();
+        msg.put("id", Long.toString(id));
+        msg.put("channel_id", Long.toString(channel.id));
+        if (channel.guildId != 0) msg.put("guild_id", Long.toString(channel.guildId));
+        msg.set("author", user(author));
+        msg.put("content", content);
+        msg.put("timestamp", Instant.now().toString());
+        msg.putNull("edited_timestamp");
+        msg.put("tts", false);
+        msg.put("mention_everyone", false);
+        msg.putArray("mentions");
+        msg.putArray("mention_roles");
+        msg.putArray("attachments");
+        msg.putArray("embeds");
+        msg.put("pinned", false);
+        msg.put("type", 0);
+        return msg;
+    }
+
+    private static ObjectNode user(FakeUser user) {
+        ObjectNode node = JSON.createObjectNode();
+        node.put("id", Long.toString(user.id));
+        node.put("username", user.name);
+        node.put("discriminator", "0001");
+        node.putNull("avatar");
+        return node;
+    }
+
+    /**
+     * @param withUser Whether the user is included, it is not in the member of a message
+     */
+    private static ObjectNode member(FakeUser user, boolean withUser) {
+        ObjectNode node = JSON.createObjectNode();
+        if (withUser) node.set("user", user(user));
+        node.putNull("nick");
+        node.putArray("roles");
+        node.put("joined_at", "2020-01-01T00:00:00+00:00");
+        node.putNull("hoisted_role");
+        node.put("deaf", false);
+        node.put("mute", false);
+        return node;
+    }
+
+    // --- Subclasses ---
+
+    public static class FakeUser {
+        public final long id;
+        public final String name;
+
+        FakeUser(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        /**
+         * @return The mention of this user in a message
+         */
+        public String mention() {
+            return "<@"+id+">";
+        }
+    }
+
+    public static class FakeGuild {
+        private final FakeDiscord discord;
+        public final long id;
+        public final String name;
+        public final FakeUser owner;
+        private final List<FakeChannel> channels;
+        private final Collection<Long> members;
+
+        FakeGuild(FakeDiscord discord, long id, String name, FakeUser owner) {
+            this.discord = discord;
+            this.id = id;
+            this.name = name;
+            this.owner = owner;
+            this.channels = new CopyOnWriteArrayList<>();
+            this.members = ConcurrentHashMap.newKeySet();
+        }
+
+        /**
+         * @return The first text channel of the guild
+         */
+        public FakeChannel getMainChannel() {
+            return channels.stream().filter(c -> c.type == 0).findFirst().orElseThrow();
+        }
+
+        public void addMember(FakeUser user) {
+            members.add(user.id);
+        }
+
+        public FakeChannel addCategory(String name) {
+            return addChannel(4, name, null);
+        }
+
+        public FakeChannel addTextChannel(String name, FakeChannel category) {
+            return addChannel(0, name, category);
+        }
+
+        private FakeChannel addChannel(int type, String name, FakeChannel category) {
+            FakeChannel channel = new FakeChannel(discord.nextId(), id, type, name, category == null ? 0 : category.id);
+            channel.position = channels.size();
+            channels.add(channel);
+            discord.channels.put(channel.id, channel);
+            return channel;
+        }
+
+        ObjectNode everyoneRole() {
+            ObjectNode role = JSON.createObjectNode();
+            role.put("id", Long.toString(id));
+            role.put("name", "@everyone");
+            role.put("color", 0);
+            role.put("hoist", false);
+            role.put("position", 0);
+            role.put("permissions", 104324673);
+            role.put("managed", false);
+            role.put("mentionable", false);
+            return role;
+        }
+
+        ObjectNode toJson() {
+            ObjectNode guild = JSON.createObjectNode();
+            guild.put("id", Long.toString(id));
+            guild.put("name", name);
+            for (String field : new String[] { "icon", "splash", "discovery_splash", "afk_channel_id",
+                    "application_id", "system_channel_id", "rules_channel_id", "vanity_url_code", "description",
+                    "banner", "public_updates_channel_id" }) {
+                guild.putNull(field);
+            }
+            guild.putArray("features");
+            guild.put("system_channel_flags", 0);
+            guild.put("owner_id", Long.toString(owner.id));
+            guild.put("region", "europe");
+            guild.put("afk_timeout", 300);
+            guild.put("default_message_notifications", 0);
+            guild.put("explicit_content_filter", 0);
+            guild.put("mfa_level", 0);
+            guild.put("premium_tier", 0);
+            guild.put("preferred_locale", "fr");
+            guild.put("verification_level", 0);
+            guild.putArray("roles").add(everyoneRole());
+            guild.putArray("emojis");
+            return guild;
+        }
+
+        /**
+         * Like Discord, the member list is complete in small guilds, and only holds the owner in large ones
+         */
+        ObjectNode toCreateJson() {
+            ObjectNode guild = toJson();
+            boolean large = members.size() > 250;
+            guild.put("joined_at", "2020-01-01T00:00:00+00:00");
+            guild.put("large", large);
+            guild.put("member_count", members.size());
+            guild.putArray("voice_states");
+            ArrayNode memberList = guild.putArray("members");
+            if (large) memberList.add(member(owner, true));
+            else for (long member : members) memberList.add(member(discord.users.get(member), true));
+            ArrayNode list = guild.putArray("channels");
+            for (FakeChannel channel : channels) list.add(channel.toJson());
+            guild.putArray("presences");
+            return guild;
+        }
+    }
+
+    public static class FakeChannel {
+        public final long id;
+        public final long guildId;
+        public final int type;
+        public final String name;
+        public final long parentId;
+        private int position;
+        private FakeUser recipient;
+
+        FakeChannel(long id, long guildId, int type, String name, long parentId) {
+            this.id = id;
+            this.guildId = guildId;
+            this.type = type;
+            this.name = name;
+            this.parentId = parentId;
+        }
+
+        ObjectNode toJson() {
+            ObjectNode channel = JSON.createObjectNode();
+            channel.put("id", Long.toString(id));
+            channel.put("type", type);
+            if (recipient != null) {
+                channel.putNull("last_message_id");
+                channel.putArray("recipients").add(user(recipient));
+                return channel;
+            }
+            channel.put("guild_id", Long.toString(guildId));
+            channel.put("position", position);
+            channel.putArray("permission_overwrites");
+            channel.put("name", name);
+            channel.put("nsfw", false);
+            if (parentId != 0) channel.put("parent_id", Long.toString(parentId));
+            else channel.putNull("parent_id");
+            if (type == 0) {
+                channel.putNull("topic");
+                channel.putNull("last_message_id");
+                channel.put("rate_limit_per_user", 0);
+            }
+            return channel;
+        }
+    }
+
+    private static class Reply {
+        final int status;
+        final JsonNode body;
+
+        Reply(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Resolves every host, discord.com included, to the local server
+     */
+    private static class LocalResolverGroup extends AddressResolverGroup<InetSocketAddress> {
+        private final InetSocketAddress address;
+
+        LocalResolverGroup(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        protected AddressResolver<InetSocketAddress> newResolver(EventExecutor executor) {
+            return new AbstractAddressResolver<InetSocketAddress>(executor, InetSocketAddress.class) {
+                @Override
+                protected boolean doIsResolved(InetSocketAddress unresolved) {
+                    return false;
+                }
+
+                @Override
+                protected void doResolve(InetSocketAddress unresolved, Promise<InetSocketAddress> promise) {
+                    promise.setSuccess(address);
+                }
+
+                @Override
+                protected void doResolveAll(InetSocketAddress unresolved, Promise<List<InetSocketAddress>> promise) {
+                    promise.setSuccess(Collections.singletonList(address));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.billialpha.discord.gamebot.fake;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import discord4j.common.close.CloseStatus;
+import discord4j.common.close.DisconnectBehavior;
+import discord4j.discordjson.json.gateway.Dispatch;
+import discord4j.gateway.GatewayClient;
+import discord4j.gateway.GatewayConnection;
+import discord4j.gateway.GatewayOptions;
+import discord4j.gateway.ShardInfo;
+import discord4j.gateway.json.GatewayPayload;
+import discord4j.gateway.retry.GatewayStateChange;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.EmitterProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Gateway connection of one shard to a {@link FakeDiscord}
+ *
+ * Events are written as the JSON Discord sends and read back with the payload reader of the client,
+ * so they go through the same decoding and dispatch as on a websocket. Payloads sent by the client,
+ * e.g. presence updates, are discarded.
+ */
+public class FakeGateway implements GatewayClient {
+    private static final Logger LOG = LoggerFactory.getLogger(FakeGateway.class);
+
+    private final FakeDiscord discord;
+    private final GatewayOptions options;
+    private final ShardInfo shard;
+    private final EmitterProcessor<Dispatch> dispatch;
+    private final FluxSink<Dispatch> dispatchSink;
+    private final FluxSink<GatewayPayload<?>> sender;
+    private final MonoProcessor<Void> closed;
+    private final AtomicInteger sequence;
+
+    FakeGateway(FakeDiscord discord, GatewayOptions options) {
+        this.discord = discord;
+        this.options = options;
+        this.shard = options.getIdentifyOptions().getShardInfo();
+        this.dispatch = EmitterProcessor.create(false);
+        this.dispatchSink = dispatch.sink(FluxSink.OverflowStrategy.BUFFER);
+        EmitterProcessor<GatewayPayload<?>> sent = EmitterProcessor.create(false);
+        sent.subscribe();
+        this.sender = sent.sink(FluxSink.OverflowStrategy.BUFFER);
+        this.closed = MonoProcessor.create();
+        this.sequence = new AtomicInteger();
+    }
+
+    // --- Getters ---
+
+    public ShardInfo getShardInfo() {
+        return shard;
+    }
+
+    @Override
+    public Flux<Dispatch> dispatch() {
+        return dispatch;
+    }
+
+    @Override
+    public Flux<GatewayPayload<?>> receiver() {
+        return Flux.never();
+    }
+
+    @Override
+    public <T> Flux<T> receiver(Function<ByteBuf, Publisher<? extends T>> mapper) {
+        return Flux.never();
+    }
+
+    @Override
+    public FluxSink<GatewayPayload<?>> sender() {
+        return sender;
+    }
+
+    @Override
+    public int getShardCount() {
+        return shard.getCount();
+    }
+
+    @Override
+    public String getSessionId() {
+        return "fake-session-"+shard.getIndex();
+    }
+
+    @Override
+    public int getSequence() {
+        return sequence.get();
+    }
+
+    @Override
+    public Flux<GatewayConnection.State> stateEvents() {
+        return Flux.never();
+    }
+
+    @Override
+    public Mono<Boolean> isConnected() {
+        return Mono.just(!closed.isTerminated());
+    }
+
+    @Override
+    public Duration getResponseTime() {
+        return Duration.ZERO;
+    }
+
+    // --- Actions ---
+
+    /**
+     * Connects the shard: the client is told it is connected, then receives READY and its guilds
+     * @return A mono completing once the connection is closed
+     */
+    @Override
+    public Mono<Void> execute(String gatewayUrl) {
+        return Mono.defer(() -> {
+            dispatchSink.next(GatewayStateChange.connected());
+            discord.onConnect(this);
+            return closed;
+        });
+    }
+
+    @Override
+    public Mono<Void> close(boolean allowResume) {
+        return Mono.fromRunnable(() -> {
+            discord.onClose(this);
+            dispatchSink.next(GatewayStateChange.disconnected(DisconnectBehavior.stop(null),
+                    CloseStatus.NORMAL_CLOSE));
+            closed.onComplete();
+        });
+    }
+
+    @Override
+    public Mono<Void> sendBuffer(Publisher<ByteBuf> publisher) {
+        return Flux.from(publisher).doOnNext(ReferenceCountUtil::release).then();
+    }
+
+    /**
+     * Sends a dispatch event to the client
+     * @param type The event name, e.g. MESSAGE_CREATE
+     */
+    void send(String type, ObjectNode data) {
+        ObjectNode payload = FakeDiscord.JSON.createObjectNode();
+        payload.put("op", 0);
+        payload.put("t", type);
+        payload.put("s", sequence.incrementAndGet());
+        payload.set("d", data);
+        LOG.debug("Shard "+shard.getIndex()+" <- "+type);
+        byte[] bytes = payload.toString().getBytes(StandardCharsets.UTF_8);
+        Mono.from(options.getPayloadReader().read(Unpooled.wrappedBuffer(bytes)))
+                .subscribe(p -> dispatchSink.next((Dispatch) p.getData()),
+                        err -> LOG.error("Cannot read fake "+type+" event", err));
+    }
+}
@@ -0,0 +1,64 @@
+package com.billialpha.discord.gamebot.fake;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the REST calls received by a {@link FakeDiscord}, by route
+ *
+ * Routes are keyed by method and path, ids replaced by placeholders, e.g. "POST /channels/{id}/messages".
+ */
+public class RestRecorder {
+    private final Map<String, LongAdder> calls;
+    private final LongAdder total;
+
+    RestRecorder() {
+        this.calls = new ConcurrentHashMap<>();
+        this.total = new LongAdder();
+    }
+
+    // --- Getters ---
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getCount(String route) {
+        LongAdder count = calls.get(route);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return The number of calls of every route called at least once, sorted by route
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        calls.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    // --- Modifiers ---
+
+    void record(String method, String[] path) {
+        calls.computeIfAbsent(route(method, path), k -> new LongAdder()).increment();
+        total.increment();
+    }
+
+    public void reset() {
+        calls.clear();
+        total.reset();
+    }
+
+    static String route(String method, String[] path) {
+        StringBuilder route = new StringBuilder(method).append(' ');
+        for (int i = 0; i < path.length; i++) {
+            route.append('/');
+            if (i > 0 && path[i-1].equals("reactions")) route.append("{emoji}");
+            else if (!path[i].isEmpty() && path[i].chars().allMatch(Character::isDigit)) route.append("{id}");
+            else route.append(path[i]);
+        }
+        return route.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.billialpha.discord.gamebot.games;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GameMailboxTest {
+
+    @Test
+    void neverDropsControlTasks() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        GameMailbox mailbox = new GameMailbox(Schedulers.fromExecutor(pending::add), 2);
+        List<String> ran = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String name = "event "+i;
+            mailbox.submit(() -> Mono.fromRunnable(() -> ran.add(name))).subscribe();
+        }
+        mailbox.submitControl(() -> Mono.fromRunnable(() -> ran.add("stop"))).subscribe();
+        assertEquals(1, mailbox.getRejectedCount());
+        assertEquals(3, mailbox.getDepth());
+        mailbox.submit(() -> Mono.fromRunnable(() -> ran.add("event 3"))).subscribe();
+        assertEquals(2, mailbox.getRejectedCount());
+
+        while (!pending.isEmpty()) pending.poll().run();
+        assertEquals(List.of("event 0", "event 1", "stop"), ran);
+        assertEquals(0, mailbox.getDepth());
+        assertEquals(3, mailbox.getMaxDepth());
+        assertEquals(3, mailbox.getProcessedCount());
+    }
+}
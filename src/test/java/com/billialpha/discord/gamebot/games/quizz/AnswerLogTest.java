@@ -0,0 +1,153 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import discord4j.common.util.Snowflake;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnswerLogTest {
+    private static final long START_MILLIS = 1_600_000_000_000L;
+
+    private static AnswerLog newLog(String... expected) {
+        AnswerLog log = new AnswerLog(expected.length > 0 ? new AnswerMatcher(List.of(expected)) : null);
+        log.setStart(Instant.ofEpochMilli(START_MILLIS), 0);
+        return log;
+    }
+
+    private static List<Long> players(AnswerLog log) {
+        List<Long> ids = new ArrayList<>();
+        for (QuizzRound.Answer answer : log.ordered()) ids.add(answer.userId.asLong());
+        return ids;
+    }
+
+    @Test
+    void ordersAnswersBySendTime() {
+        AnswerLog log = newLog();
+        log.append(Snowflake.of(1), "a", START_MILLIS + 30, 30);
+        log.append(Snowflake.of(2), "b", START_MILLIS + 10, 40); // Overtaken by the first one
+        log.append(Snowflake.of(3), "c", START_MILLIS + 20, 50);
+        log.append(Snowflake.of(4), "d", START_MILLIS + 40, 60);
+        assertEquals(List.of(2L, 3L, 1L, 4L), players(log));
+        int order = 0;
+        for (QuizzRound.Answer answer : log.ordered()) assertEquals(++order, answer.order);
+    }
+
+    @Test
+    void breaksTiesByReceiveTime() {
+        AnswerLog log = newLog();
+        log.append(Snowflake.of(1), "a", START_MILLIS, 10);
+        log.append(Snowflake.of(2), "b", START_MILLIS, 20);
+        assertEquals(List.of(1L, 2L), players(log));
+    }
+
+    @Test
+    void keepsFirstAnswerOfEachPlayer() {
+        AnswerLog log = newLog();
+        assertNotNull(log.append(Snowflake.of(1), "first", START_MILLIS + 10, 10));
+        assertNull(log.append(Snowflake.of(1), "second", START_MILLIS + 5, 20));
+        assertNull(log.replay(Snowflake.of(1), "third", START_MILLIS, 0));
+        assertEquals(1, log.size());
+        assertEquals("first", log.get(Snowflake.of(1)).answer);
+        assertTrue(log.contains(1));
+        assertFalse(log.contains(2));
+    }
+
+    @Test
+    void findsPlayersAfterGrowingAndInserting() {
+        AnswerLog log = newLog();
+        for (int i = 0; i < 100; i++) {
+            long sentAt = START_MILLIS + (i % 2 == 0 ? i : 100 - i); // Half of them overtaken
+            assertNotNull(log.append(Snowflake.of(1000 + i), "x", sentAt, i));
+        }
+        assertEquals(100, log.size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(log.contains(1000 + i));
+            assertNull(log.append(Snowflake.of(1000 + i), "x", START_MILLIS, 0));
+        }
+        long previous = Long.MIN_VALUE;
+        for (QuizzRound.Answer answer : log.ordered()) {
+            assertTrue(answer.sentAt.toEpochMilli() >= previous);
+            previous = answer.sentAt.toEpochMilli();
+        }
+    }
+
+    @Test
+    void gradesAnswers() {
+        AnswerLog log = newLog("Paris");
+        assertTrue(log.append(Snowflake.of(1), "paris", START_MILLIS, 0).correct);
+        assertFalse(log.append(Snowflake.of(2), "Lyon", START_MILLIS, 0).correct);
+    }
+
+    @Test
+    void keepsOneOrderedAnswerPerPlayerUnderContention() throws Exception {
+        int threads = 8;
+        int players = 2000;
+        AnswerLog log = newLog("réponse");
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    // Every thread answers for every player, slightly out of order, only one answer each is kept
+                    for (int i = 0; i < players; i++) {
+                        int player = (i * 7 + seed * 13) % players;
+                        long sentAt = START_MILLIS + player + (seed % 3);
+                        if (log.append(Snowflake.of(player + 1), "reponse", sentAt, i) != null) accepted.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            Future<?> reader = pool.submit(() -> {
+                start.await();
+                while (writing.get()) { // Readers see a consistent, ordered prefix while answers are added
+                    Set<Long> seen = new HashSet<>();
+                    long previous = Long.MIN_VALUE;
+                    int order = 0;
+                    for (QuizzRound.Answer answer : log.ordered()) {
+                        assertTrue(seen.add(answer.userId.asLong()), "Duplicate answer");
+                        assertTrue(answer.sentAt.toEpochMilli() >= previous, "Answers out of order");
+                        assertEquals(++order, answer.order);
+                        previous = answer.sentAt.toEpochMilli();
+                    }
+                }
+                return null;
+            });
+            start.countDown();
+            for (Future<?> writer : writers) writer.get(30, TimeUnit.SECONDS);
+            writing.set(false);
+            reader.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(players, accepted.get());
+        assertEquals(players, log.size());
+        Set<Long> seen = new HashSet<>();
+        for (QuizzRound.Answer answer : log.ordered()) {
+            assertTrue(seen.add(answer.userId.asLong()));
+            assertTrue(answer.correct);
+        }
+        assertEquals(players, seen.size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnswerMatcherTest {
+
+    @Test
+    void ignoresCaseAccentsAndPunctuation() {
+        AnswerMatcher matcher = new AnswerMatcher(List.of("Élysée"));
+        assertTrue(matcher.matches("elysee"));
+        assertTrue(matcher.matches("  ÉLYSÉE !"));
+        assertEquals("coeur de boeuf", new String(AnswerMatcher.normalize("Cœur-de-bœuf...")));
+    }
+
+    @Test
+    void ignoresLeadingArticle() {
+        AnswerMatcher matcher = new AnswerMatcher(List.of("La Joconde"));
+        assertTrue(matcher.matches("joconde"));
+        assertTrue(matcher.matches("l'joconde"));
+        assertTrue(matcher.matches("Une joconde"));
+        assertEquals("la", new String(AnswerMatcher.normalize("la"))); // Not an article alone
+    }
+
+    @Test
+    void allowsTyposOnLongerAnswers() {
+        assertTrue(new AnswerMatcher(List.of("chat")).matches("chot")); // 4 letters: 1 typo
+        assertTrue(new AnswerMatcher(List.of("chat")).matches("chats"));
+        assertFalse(new AnswerMatcher(List.of("chat")).matches("chien"));
+        assertFalse(new AnswerMatcher(List.of("rat")).matches("rot")); // 3 letters: exact
+        assertTrue(new AnswerMatcher(List.of("Napoléon")).matches("napolon"));
+        assertTrue(new AnswerMatcher(List.of("Napoléon")).matches("naploeon"));
+        assertFalse(new AnswerMatcher(List.of("Napoléon")).matches("nappolloen"));
+    }
+
+    @Test
+    void matchesAnyExpectedAnswer() {
+        AnswerMatcher matcher = new AnswerMatcher(List.of("Londres", "London"));
+        assertTrue(matcher.matches("london"));
+        assertTrue(matcher.matches("londres"));
+        assertFalse(matcher.matches("Berlin"));
+        assertFalse(new AnswerMatcher(List.of()).matches("anything"));
+    }
+
+    @Test
+    void boundsEditDistance() {
+        char[] a = "kitten".toCharArray();
+        char[] b = "sitting".toCharArray();
+        assertFalse(AnswerMatcher.withinDistance(a, b, 2));
+        assertTrue(AnswerMatcher.withinDistance(a, b, 3));
+        assertTrue(AnswerMatcher.withinDistance(a, a, 0));
+        assertFalse(AnswerMatcher.withinDistance("ab".toCharArray(), "abcd".toCharArray(), 1));
+    }
+}
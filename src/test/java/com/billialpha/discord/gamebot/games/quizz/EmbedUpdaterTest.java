@@ -0,0 +1,87 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmbedUpdaterTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void flushCompletesAtOnceWithoutMessage() {
+        EmbedUpdater<String> updater = new EmbedUpdater<>(Mono::just);
+        assertNull(updater.flush().block(TIMEOUT));
+    }
+
+    @Test
+    void collapsesRequestsDuringAnEdit() {
+        AtomicInteger edits = new AtomicInteger();
+        AtomicReference<MonoProcessor<String>> inFlight = new AtomicReference<>();
+        EmbedUpdater<String> updater = new EmbedUpdater<>(msg -> {
+            edits.incrementAndGet();
+            MonoProcessor<String> edit = MonoProcessor.create();
+            inFlight.set(edit);
+            return edit;
+        });
+        updater.setMessage("embed");
+        updater.request();
+        for (int i = 0; i < 10; i++) updater.request();
+        assertEquals(1, edits.get());
+        inFlight.get().onNext("embed");
+        assertEquals(2, edits.get()); // One edit for all the requests made meanwhile
+        inFlight.get().onNext("embed");
+        assertEquals(2, edits.get());
+    }
+
+    @Test
+    void flushWaitsForAnEditStartedAfterIt() {
+        AtomicReference<MonoProcessor<String>> inFlight = new AtomicReference<>();
+        EmbedUpdater<String> updater = new EmbedUpdater<>(msg -> {
+            MonoProcessor<String> edit = MonoProcessor.create();
+            inFlight.set(edit);
+            return edit;
+        });
+        updater.setMessage("embed");
+        updater.request();
+        MonoProcessor<String> running = inFlight.get();
+        MonoProcessor<String> flushed = updater.flush().toProcessor();
+        running.onNext("embed");
+        assertFalse(flushed.isTerminated()); // The running edit rendered the state before the flush
+        inFlight.get().onNext("embed");
+        assertEquals("embed", flushed.block(TIMEOUT));
+    }
+
+    /**
+     * Flushes racing with edits completing on another thread must all complete
+     */
+    @Test
+    void flushRacingWithEditsCompletes() throws InterruptedException {
+        for (int i = 0; i < 2000; i++) {
+            EmbedUpdater<String> updater = new EmbedUpdater<>(msg -> Mono.just(msg).publishOn(Schedulers.parallel()));
+            updater.setMessage("embed");
+            CountDownLatch go = new CountDownLatch(1);
+            Thread requests = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int r = 0; r < 20; r++) updater.request();
+            });
+            requests.start();
+            go.countDown();
+            assertEquals("embed", updater.flush().block(TIMEOUT));
+            requests.join();
+        }
+    }
+}
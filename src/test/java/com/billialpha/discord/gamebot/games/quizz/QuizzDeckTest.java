@@ -0,0 +1,53 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QuizzDeckTest {
+
+    private static QuizzDeck parse(String filename, String deck) throws IOException {
+        return QuizzDeck.parse(filename, new ByteArrayInputStream(deck.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void parsesJsonDeck() throws IOException {
+        QuizzDeck deck = parse("deck.json", "[{\"question\": \"Capitale ?\", \"answers\": [\"Paris\", \" \"], " +
+                "\"source\": {\"page\": 1}}, {\"question\": \"Fleuve ?\", \"description\": \"En France\"}]");
+        assertEquals(2, deck.size());
+        assertEquals("Capitale ?", deck.get(0).title);
+        assertNull(deck.get(0).desc);
+        assertEquals(List.of("Paris"), deck.get(0).expected);
+        assertEquals("En France", deck.get(1).desc);
+    }
+
+    @Test
+    void rejectsAnswersThatAreNotStrings() {
+        IOException ex = assertThrows(IOException.class, () -> parse("deck.json",
+                "[{\"question\": \"Capitale ?\", \"answers\": [\"Paris\", {\"question\": \"Fleuve ?\"}]}]"));
+        assertEquals("Answers of question 1 must be strings", ex.getMessage());
+        assertThrows(IOException.class, () -> parse("deck.json", "[{\"question\": \"Capitale ?\", \"answers\": [1]}]"));
+    }
+
+    @Test
+    void rejectsQuestionsThatAreNotObjects() {
+        IOException ex = assertThrows(IOException.class, () -> parse("deck.json",
+                "[{\"question\": \"Capitale ?\"}, \"Fleuve ?\"]"));
+        assertEquals("Deck must be an array of questions", ex.getMessage());
+    }
+
+    @Test
+    void parsesTextDeck() throws IOException {
+        QuizzDeck deck = parse("deck.txt", "Capitale ?\nDe la France\n=Paris\n\n\nFleuve ?\n=Seine\n=La Seine\n");
+        assertEquals(2, deck.size());
+        assertEquals("De la France", deck.get(0).desc);
+        assertEquals(List.of("Seine", "La Seine"), deck.get(1).expected);
+    }
+}
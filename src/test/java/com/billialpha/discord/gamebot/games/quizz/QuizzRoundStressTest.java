@@ -0,0 +1,115 @@
+package com.billialpha.discord.gamebot.games.quizz;
+
+import com.billialpha.discord.gamebot.BotHarness;
+import com.billialpha.discord.gamebot.GameBot;
+import com.billialpha.discord.gamebot.fake.FakeDiscord;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeChannel;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeGuild;
+import com.billialpha.discord.gamebot.fake.FakeDiscord.FakeUser;
+import com.billialpha.discord.gamebot.games.GameInstance;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import discord4j.common.util.Snowflake;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuizzRoundStressTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+    private static final int PLAYERS = 120;
+    private static final int THREADS = 8;
+    private static final int REPEATS = 3;
+
+    @TempDir
+    Path dir;
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Every player answers several times at once from many threads, the round must count each one once,
+     * stop when all answered and only score correct answers
+     */
+    @Test
+    void countsEachPlayerOnceUnderConcurrentAnswers() throws Exception {
+        try (FakeDiscord discord = new FakeDiscord()) {
+            FakeUser host = discord.addUser("Hôte");
+            FakeGuild guild = discord.addGuild("Guild", host, 0, 1);
+            guild.addTextChannel("equipe-1", guild.addCategory(QuizzGame.DEFAULT_CATEGORY));
+            FakeChannel main = guild.getMainChannel();
+            List<FakeUser> players = new ArrayList<>();
+            for (int i = 0; i < PLAYERS; i++) {
+                FakeUser player = discord.addUser("Joueur "+i);
+                guild.addMember(player);
+                players.add(player);
+            }
+            try (BotHarness harness = BotHarness.start(discord, 1, new int[] { 0 }, BotHarness.unlimited(), dir)) {
+                GameBot bot = harness.getBot();
+                Snowflake guildId = Snowflake.of(guild.id);
+                discord.sendMessage(main, host, "%start quizz");
+                ObjectNode lobby = discord.awaitMessage(m -> m.get("content").asText().startsWith("**On démarre"),
+                        TIMEOUT);
+                assertNotNull(lobby);
+                GameInstance game = harness.awaitGame(main.id, lobby.get("id").asLong());
+                for (FakeUser player : players) discord.react(main.id, lobby.get("id").asLong(), player, "✅");
+                await(() -> game.getPlayers().size() == PLAYERS + 1);
+                discord.react(main.id, lobby.get("id").asLong(), host, "✅");
+                await(() -> game.getState() == GameInstance.State.ACTIVE);
+                assertNotNull(discord.awaitMessage(m -> m.get("content").asText().startsWith("Dès que vous êtes prêt"),
+                        TIMEOUT));
+                discord.sendDirectMessage(host, "Combien font 6 fois 7 ?\n=42");
+                assertNotNull(discord.awaitMessage(m -> m.get("channel_id").asLong() == main.id
+                        && m.get("embeds").size() > 0, TIMEOUT));
+
+                // Even players answer right, odd ones wrong, each of them several times
+                ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+                CountDownLatch go = new CountDownLatch(1);
+                for (int t = 0; t < THREADS; t++) {
+                    int thread = t;
+                    executor.execute(() -> {
+                        try {
+                            go.await();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                        for (int r = 0; r < REPEATS; r++) {
+                            for (int i = thread; i < PLAYERS; i += THREADS) {
+                                String answer = i % 2 == 0 ? "42" : "24";
+                                discord.sendMessage(main, players.get(i), discord.getSelf().mention()+" "+answer);
+                            }
+                        }
+                    });
+                }
+                go.countDown();
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+
+                // The round stops by itself once every player answered
+                await(() -> bot.getMetrics().roundsFinished.get() == 1);
+                assertEquals(PLAYERS, bot.getMetrics().answers.get());
+                await(() -> bot.getLeaderboard().getTop(guildId, PLAYERS).size() == PLAYERS / 2);
+                for (int i = 0; i < PLAYERS; i++) {
+                    Snowflake playerId = Snowflake.of(players.get(i).id);
+                    assertEquals(i % 2 == 0, bot.getLeaderboard().getScore(guildId, playerId).isPresent());
+                }
+            }
+        }
+    }
+}
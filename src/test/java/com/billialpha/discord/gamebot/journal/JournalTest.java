@@ -0,0 +1,109 @@
+package com.billialpha.discord.gamebot.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalTest {
+    @TempDir
+    Path dir;
+
+    private static Journal open(Path path) {
+        return new Journal("test-journal", path, Duration.ofMillis(5), 1 << 20);
+    }
+
+    /**
+     * Appends records holding a key and a string, then closes the journal
+     */
+    private static void write(Path path, int from, int to) throws IOException {
+        Journal journal = open(path);
+        journal.replay((key, type, in) -> {});
+        journal.start(sink -> {});
+        for (int i = from; i < to; i++) {
+            String text = "record "+i;
+            journal.append(i, 1, out -> out.writeUTF(text));
+        }
+        journal.close();
+    }
+
+    private static List<String> replay(Path path) throws IOException {
+        List<String> records = new ArrayList<>();
+        open(path).replay((key, type, in) -> records.add(key+":"+type+":"+in.readUTF()));
+        return records;
+    }
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        Path path = dir.resolve("ordered.journal");
+        write(path, 0, 100);
+        List<String> records = replay(path);
+        assertEquals(100, records.size());
+        for (int i = 0; i < 100; i++) assertEquals(i+":1:record "+i, records.get(i));
+    }
+
+    @Test
+    void truncatesTornTail() throws IOException {
+        Path path = dir.resolve("torn.journal");
+        write(path, 0, 10);
+        long size = Files.size(path);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ch.truncate(size - 3); // Last record cut mid-write
+        }
+        List<String> records = replay(path);
+        assertEquals(9, records.size());
+        assertEquals("8:1:record 8", records.get(8));
+        long recordSize = size / 10;
+        assertEquals(size - recordSize, Files.size(path));
+
+        // Appending after the truncated tail keeps the journal readable
+        write(path, 10, 12);
+        records = replay(path);
+        assertEquals(11, records.size());
+        assertEquals("11:1:record 11", records.get(10));
+    }
+
+    @Test
+    void stopsAtCorruptedRecord() throws IOException {
+        Path path = dir.resolve("corrupted.journal");
+        write(path, 0, 10);
+        long recordSize = Files.size(path) / 10;
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[(int) (5 * recordSize + 20)] ^= 0x55; // Payload of the 6th record
+        Files.write(path, bytes);
+        List<String> records = replay(path);
+        assertEquals(5, records.size());
+        assertEquals(5 * recordSize, Files.size(path));
+    }
+
+    @Test
+    void stopsAtGarbageLength() throws IOException {
+        Path path = dir.resolve("garbage.journal");
+        write(path, 0, 3);
+        long size = Files.size(path);
+        Files.write(path, new byte[] { 0x7f, 0, 0, 0, 1, 2 }, StandardOpenOption.APPEND);
+        assertEquals(3, replay(path).size());
+        assertEquals(size, Files.size(path));
+    }
+
+    @Test
+    void skipsUnreadableRecords() throws IOException {
+        Path path = dir.resolve("unreadable.journal");
+        write(path, 0, 5);
+        List<Long> keys = new ArrayList<>();
+        open(path).replay((key, type, in) -> {
+            if (key == 2) throw new IOException("Unknown record");
+            keys.add(key);
+        });
+        assertEquals(List.of(0L, 1L, 3L, 4L), keys);
+    }
+}
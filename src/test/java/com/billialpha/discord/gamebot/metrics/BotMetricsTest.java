@@ -0,0 +1,55 @@
+package com.billialpha.discord.gamebot.metrics;
+
+import io.netty.handler.codec.http.HttpMethod;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BotMetricsTest {
+
+    @Test
+    void replacesIdsAndEmojisInRoutes() {
+        assertEquals("channels/{id}/messages", BotMetrics.routeOf("/api/v8/channels/123/messages"));
+        assertEquals("channels/{id}/messages/{id}/reactions/{emoji}/@me",
+                BotMetrics.routeOf("/api/v8/channels/1/messages/2/reactions/%E2%9C%85/@me"));
+        assertEquals("users/@me/channels", BotMetrics.routeOf("/users/@me/channels/?limit=1"));
+        assertTrue(BotMetrics.hasRoute("/api/v8/channels/4/messages/5", "channels/{id}/messages/{id}"));
+        assertFalse(BotMetrics.hasRoute("/api/v8/channels/4/messages", "channels/{id}/messages/{id}"));
+        assertFalse(BotMetrics.hasRoute("/api/v8/channels/4/messages/5", "channels/{id}/messages"));
+    }
+
+    @Test
+    void reusesInstrumentsOfARoute() {
+        BotMetrics metrics = new BotMetrics(new MetricRegistry());
+        BotMetrics.RouteMetrics post = metrics.route(HttpMethod.POST, "/api/v8/channels/1/messages");
+        assertSame(post, metrics.route(HttpMethod.POST, "/api/v8/channels/2/messages"));
+        assertNotSame(post, metrics.route(HttpMethod.GET, "/api/v8/channels/1/messages"));
+        assertEquals("channels/{id}/messages", post.route);
+        assertEquals(BotMetrics.routeHash(HttpMethod.POST, "/api/v8/channels/1/messages"),
+                BotMetrics.routeHash(HttpMethod.POST, "/api/v8/channels/2/messages"));
+    }
+
+    @Test
+    void growsRouteTable() {
+        BotMetrics metrics = new BotMetrics(new MetricRegistry());
+        BotMetrics.RouteMetrics[] routes = new BotMetrics.RouteMetrics[200];
+        for (int i = 0; i < routes.length; i++) routes[i] = metrics.route(HttpMethod.GET, "/api/v8/route"+name(i));
+        for (int i = 0; i < routes.length; i++) {
+            assertSame(routes[i], metrics.route(HttpMethod.GET, "/api/v8/route"+name(i)));
+        }
+        StringBuilder out = new StringBuilder();
+        metrics.getRegistry().write(out);
+        assertTrue(out.toString().contains("route=\"GET routezx6\""));
+    }
+
+    /**
+     * @return A name made of letters, not mistaken for an id
+     */
+    private static String name(int i) {
+        return (char) ('a' + i % 26)+"x"+i / 26;
+    }
+}
@@ -0,0 +1,40 @@
+package com.billialpha.discord.gamebot.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MetricRegistryTest {
+
+    @Test
+    void readsQuantilesAsBucketBounds() {
+        MetricRegistry.Distribution latency = new MetricRegistry()
+                .distribution("latency", "Latency", new long[] { 10, 100, 1000 }, 1);
+        assertEquals(0, latency.quantile(0.5));
+        for (int i = 0; i < 98; i++) latency.record(5);
+        latency.record(50);
+        latency.record(5000);
+        assertEquals(100, latency.getCount());
+        assertEquals(98 * 5 + 50 + 5000, latency.getSum());
+        assertEquals(10, latency.quantile(0.5));
+        assertEquals(100, latency.quantile(0.99));
+        assertEquals(Long.MAX_VALUE, latency.quantile(1));
+    }
+
+    @Test
+    void writesCumulativeBuckets() {
+        MetricRegistry registry = new MetricRegistry();
+        MetricRegistry.Distribution size = registry.distribution("size", "Size", new long[] { 1, 2 }, 1, "k", "v");
+        size.record(1);
+        size.record(3);
+        StringBuilder out = new StringBuilder();
+        registry.write(out);
+        assertEquals("# HELP size Size\n" +
+                "# TYPE size histogram\n" +
+                "size_bucket{k=\"v\",le=\"1.0\"} 1\n" +
+                "size_bucket{k=\"v\",le=\"2.0\"} 1\n" +
+                "size_bucket{k=\"v\",le=\"+Inf\"} 2\n" +
+                "size_sum{k=\"v\"} 4.0\n" +
+                "size_count{k=\"v\"} 2\n", out.toString());
+    }
+}
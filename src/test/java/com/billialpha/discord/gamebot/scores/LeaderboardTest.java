@@ -0,0 +1,92 @@
+package com.billialpha.discord.gamebot.scores;
+
+import com.billialpha.discord.gamebot.journal.Journal;
+import discord4j.common.util.Snowflake;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardTest {
+    private static final Snowflake GUILD = Snowflake.of(1);
+
+    @TempDir
+    Path dir;
+
+    private static Journal open(Path path) {
+        return new Journal("test-scores", path, Duration.ofMillis(5), 1 << 20);
+    }
+
+    @Test
+    void ranksPlayers() throws IOException {
+        Journal journal = open(dir.resolve("ranks.scores"));
+        Leaderboard leaderboard = new Leaderboard(journal);
+        leaderboard.load();
+        leaderboard.addPoints(GUILD, Snowflake.of(10), 5);
+        leaderboard.addPoints(GUILD, Snowflake.of(11), 8);
+        leaderboard.addPoints(GUILD, Snowflake.of(12), 5);
+        leaderboard.addPoints(GUILD, Snowflake.of(10), 1);
+        journal.close();
+        List<Leaderboard.Score> top = leaderboard.getTop(GUILD, 10);
+        assertEquals(3, top.size());
+        assertEquals(11, top.get(0).getPlayerId().asLong());
+        assertEquals(1, top.get(0).getRank());
+        assertEquals(6, top.get(1).getPoints());
+        assertEquals(3, leaderboard.getScore(GUILD, Snowflake.of(12)).get().getRank());
+        assertTrue(leaderboard.getScore(GUILD, Snowflake.of(13)).isEmpty());
+    }
+
+    @Test
+    void restoresTotals() throws IOException {
+        Path path = dir.resolve("totals.scores");
+        Journal journal = open(path);
+        Leaderboard leaderboard = new Leaderboard(journal);
+        leaderboard.load();
+        for (int i = 0; i < 10; i++) leaderboard.addPoints(GUILD, Snowflake.of(10), 3);
+        journal.close();
+
+        // Replaying a journal twice as long, e.g. records written again after a snapshot, changes nothing
+        byte[] records = Files.readAllBytes(path);
+        Files.write(path, records, StandardOpenOption.APPEND);
+        journal = open(path);
+        Leaderboard restored = new Leaderboard(journal);
+        restored.load();
+        journal.close();
+        assertEquals(30, restored.getScore(GUILD, Snowflake.of(10)).get().getPoints());
+    }
+
+    @Test
+    void replaysPointRecordsOfOlderJournals() throws IOException {
+        Path path = dir.resolve("legacy.scores");
+        Journal journal = open(path);
+        journal.replay((key, type, in) -> {});
+        journal.start(sink -> {});
+        for (int i = 0; i < 3; i++) {
+            journal.append(GUILD.asLong(), 1, out -> {
+                out.writeLong(10);
+                out.writeLong(4);
+            });
+        }
+        journal.close();
+        journal = open(path);
+        Leaderboard leaderboard = new Leaderboard(journal);
+        leaderboard.load();
+        leaderboard.addPoints(GUILD, Snowflake.of(10), 1);
+        journal.close();
+        assertEquals(13, leaderboard.getScore(GUILD, Snowflake.of(10)).get().getPoints());
+
+        journal = open(path);
+        Leaderboard restored = new Leaderboard(journal);
+        restored.load();
+        journal.close();
+        assertEquals(13, restored.getScore(GUILD, Snowflake.of(10)).get().getPoints());
+    }
+}